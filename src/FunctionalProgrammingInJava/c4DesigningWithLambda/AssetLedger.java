@@ -0,0 +1,155 @@
+package FunctionalProgrammingInJava.c4DesigningWithLambda;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/***
+ * Keeping the Totals While the Assets Change
+ * P2AssetUtilRefactored.totalAssetValues() computes a total by walking the whole list. When the
+ * assets keep changing, from many threads, walking the list again for every query is both slow
+ * and racy.
+ * AssetLedger turns it around: it updates the totals as the assets change. Every asset gets an
+ * id when it's added; removing or revaluing it by id adjusts the running total and count of its
+ * AssetType by the difference. The totals are LongAdders, which spread concurrent updates over
+ * several cells instead of making every writer fight over one counter, so writers scale.
+ * A total is then a read of one adder per type, however many assets there are. Reads don't
+ * block writers; while writes are in flight, a read sees a value that may lag the very latest
+ * changes, and once the writers are quiet, the totals are exact.
+ */
+public class AssetLedger {
+
+    private static final Asset.AssetType[] TYPES = Asset.AssetType.values();
+
+    private final ConcurrentHashMap<Long, Asset> assets = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final LongAdder[] totals = new LongAdder[TYPES.length];
+    private final LongAdder[] counts = new LongAdder[TYPES.length];
+
+    public AssetLedger() {
+        for (int i = 0; i < TYPES.length; i++) {
+            totals[i] = new LongAdder();
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /*
+    Returns the id to remove or revalue the asset with later.
+     */
+    public long add(final Asset asset) {
+        final long id = nextId.incrementAndGet();
+        assets.put(id, asset);
+        totals[asset.getType().ordinal()].add(asset.getValue());
+        counts[asset.getType().ordinal()].increment();
+        return id;
+    }
+
+    public boolean remove(final long id) {
+        final Asset removed = assets.remove(id);
+        if (removed == null) {
+            return false;
+        }
+        totals[removed.getType().ordinal()].add(-removed.getValue());
+        counts[removed.getType().ordinal()].decrement();
+        return true;
+    }
+
+    /*
+    Asset is immutable, so revaluing replaces it. The adjustment happens inside
+    computeIfPresent(), which is atomic per id: two revaluations of the same asset can't both
+    compute their difference from the same old value.
+     */
+    public boolean revalue(final long id, final int newValue) {
+        return assets.computeIfPresent(id, (key, old) -> {
+            totals[old.getType().ordinal()].add((long) newValue - old.getValue());
+            return new Asset(old.getType(), newValue);
+        }) != null;
+    }
+
+    public Asset get(final long id) {
+        return assets.get(id);
+    }
+
+    public long totalAssetValues() {
+        long total = 0;
+        for (LongAdder adder : totals) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    public long totalAssetValues(final Asset.AssetType type) {
+        return totals[type.ordinal()].sum();
+    }
+
+    /*
+    The "what to total" strategy of P2AssetUtilRefactored, at the level of types.
+     */
+    public long totalAssetValues(final Predicate<Asset.AssetType> typeSelector) {
+        long total = 0;
+        for (Asset.AssetType type : TYPES) {
+            if (typeSelector.test(type)) {
+                total += totals[type.ordinal()].sum();
+            }
+        }
+        return total;
+    }
+
+    public long count(final Asset.AssetType type) {
+        return counts[type.ordinal()].sum();
+    }
+
+    /*
+    A copy of the current assets, for the code that still wants a list to walk.
+     */
+    public List<Asset> assets() {
+        return new ArrayList<>(assets.values());
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        final AssetLedger ledger = new AssetLedger();
+
+        /*
+        Eight writers add, revalue and remove assets at the same time.
+         */
+        final int writers = 8;
+        final CountDownLatch done = new CountDownLatch(writers);
+        for (int w = 0; w < writers; w++) {
+            new Thread(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                final List<Long> mine = new ArrayList<>();
+                for (int i = 0; i < 100_000; i++) {
+                    final int action = random.nextInt(10);
+                    if (action < 6 || mine.isEmpty()) {
+                        mine.add(ledger.add(new Asset(random.nextBoolean()
+                                ? Asset.AssetType.BOND : Asset.AssetType.STOCK, random.nextInt(1, 5000))));
+                    } else if (action < 9) {
+                        ledger.revalue(mine.get(random.nextInt(mine.size())), random.nextInt(1, 5000));
+                    } else {
+                        ledger.remove(mine.remove(mine.size() - 1));
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+
+        /*
+        The running totals agree with a full rescan of the assets.
+         */
+        final List<Asset> snapshot = ledger.assets();
+        System.out.println("Total of all assets: " + ledger.totalAssetValues()
+                + ", rescan: " + snapshot.stream().mapToLong(Asset::getValue).sum());
+        System.out.println("Total of bonds: " + ledger.totalAssetValues(Asset.AssetType.BOND)
+                + ", rescan: " + snapshot.stream()
+                .filter(asset -> asset.getType() == Asset.AssetType.BOND)
+                .mapToLong(Asset::getValue).sum());
+        System.out.println("Number of stocks: " + ledger.count(Asset.AssetType.STOCK));
+    }
+}
@@ -0,0 +1,126 @@
+package FunctionalProgrammingInJava.c4DesigningWithLambda;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/***
+ * Storing Assets by Column
+ * P1AssetUtil and P2AssetUtilRefactored total a List<Asset>: every asset is an object of its
+ * own, somewhere on the heap, and totaling means following one reference per asset. With tens
+ * of millions of assets that's mostly cache misses, plus a lot of objects for the garbage
+ * collector to trace.
+ * AssetStore keeps the same data as two parallel arrays, one per property: the types as a
+ * byte[] of AssetType ordinals and the values as a long[]. Totaling is then a tight loop over
+ * contiguous memory, which the JIT can unroll and the CPU can prefetch.
+ * The "what to total" concern stays separate, as in P2AssetUtilRefactored, but the selector
+ * picks asset types: it's evaluated once per AssetType up front, not once per asset.
+ */
+public class AssetStore {
+
+    private static final Asset.AssetType[] TYPES = Asset.AssetType.values();
+
+    private byte[] types;
+    private long[] values;
+    private int size;
+
+    public AssetStore() {
+        this(16);
+    }
+
+    public AssetStore(final int initialCapacity) {
+        types = new byte[Math.max(1, initialCapacity)];
+        values = new long[Math.max(1, initialCapacity)];
+    }
+
+    public static AssetStore of(final List<Asset> assets) {
+        final AssetStore store = new AssetStore(assets.size());
+        assets.forEach(store::add);
+        return store;
+    }
+
+    public AssetStore add(final Asset asset) {
+        return add(asset.getType(), asset.getValue());
+    }
+
+    public AssetStore add(final Asset.AssetType type, final long value) {
+        if (size == values.length) {
+            final int capacity = size + (size >> 1) + 1;
+            types = Arrays.copyOf(types, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        types[size] = (byte) type.ordinal();
+        values[size] = value;
+        size++;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Asset.AssetType getType(final int index) {
+        return TYPES[types[checkIndex(index)]];
+    }
+
+    public long getValue(final int index) {
+        return values[checkIndex(index)];
+    }
+
+    private int checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        return index;
+    }
+
+    /*
+    The columns, for code in this package that scans them directly. Only the first size()
+    entries are meaningful.
+     */
+    byte[] typeColumn() {
+        return types;
+    }
+
+    long[] valueColumn() {
+        return values;
+    }
+
+    public long totalAssetValues() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += values[i];
+        }
+        return total;
+    }
+
+    /*
+    The counterpart of P2AssetUtilRefactored.totalAssetValues(assets, assetSelector). The
+    selector is turned into one weight per type (1 to include, 0 to skip), so the loop has
+    no branch and no call in it.
+     */
+    public long totalAssetValues(final Predicate<Asset.AssetType> typeSelector) {
+        final long[] weights = new long[TYPES.length];
+        for (Asset.AssetType type : TYPES) {
+            weights[type.ordinal()] = typeSelector.test(type) ? 1 : 0;
+        }
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += values[i] * weights[types[i]];
+        }
+        return total;
+    }
+
+    public static void main(String[] args) {
+
+        final AssetStore store = new AssetStore()
+                .add(Asset.AssetType.BOND, 1000)
+                .add(Asset.AssetType.BOND, 2000)
+                .add(Asset.AssetType.STOCK, 3000)
+                .add(Asset.AssetType.STOCK, 4000);
+
+        System.out.println("Total of all assets: " + store.totalAssetValues());
+        System.out.println("Total of bonds: " + store.totalAssetValues(type -> type == Asset.AssetType.BOND));
+        System.out.println("Total of stocks: " + store.totalAssetValues(type -> type == Asset.AssetType.STOCK));
+    }
+}
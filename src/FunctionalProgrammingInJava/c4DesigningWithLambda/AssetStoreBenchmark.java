@@ -0,0 +1,55 @@
+package FunctionalProgrammingInJava.c4DesigningWithLambda;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.LongSupplier;
+
+/***
+ * A rough comparison of totaling a List<Asset> (P1AssetUtil, P2AssetUtilRefactored) with
+ * totaling an AssetStore. There is no JMH in this project, so this is a plain main() that
+ * warms every variant up before timing it.
+ * The list is shuffled after it's built, like a list that grew over time would be, so the
+ * Asset objects aren't laid out in allocation order.
+ * Values stay small so the int totals of the list-based methods don't overflow.
+ */
+public class AssetStoreBenchmark {
+
+    private static final int ASSETS = 5_000_000;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+
+        final SplittableRandom random = new SplittableRandom(42);
+        final List<Asset> assets = new ArrayList<>(ASSETS);
+        for (int i = 0; i < ASSETS; i++) {
+            assets.add(new Asset(random.nextBoolean() ? Asset.AssetType.BOND : Asset.AssetType.STOCK,
+                    random.nextInt(1, 100)));
+        }
+        Collections.shuffle(assets, new java.util.Random(42));
+        final AssetStore store = AssetStore.of(assets);
+
+        for (int round = 0; round < 2; round++) {
+            final boolean report = round == 1;
+            time(report, "P1AssetUtil.totalAssetValues", () -> P1AssetUtil.totalAssetValues(assets));
+            time(report, "P1AssetUtil.totalBondValues", () -> P1AssetUtil.totalBondValues(assets));
+            time(report, "P2AssetUtilRefactored, bonds", () -> P2AssetUtilRefactored.totalAssetValues(assets,
+                    asset -> asset.getType() == Asset.AssetType.BOND));
+            time(report, "AssetStore.totalAssetValues", store::totalAssetValues);
+            time(report, "AssetStore, bonds", () -> store.totalAssetValues(type -> type == Asset.AssetType.BOND));
+        }
+    }
+
+    private static void time(final boolean report, final String name, final LongSupplier total) {
+        long result = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            result += total.getAsLong();
+        }
+        final long elapsed = System.nanoTime() - start;
+        if (report) {
+            System.out.printf("%-32s %8.2f ms per total (%d)%n", name, elapsed / 1e6 / ROUNDS, result / ROUNDS);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package FunctionalProgrammingInJava.c4DesigningWithLambda;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/***
+ * All the Figures in One Pass
+ * P1AssetUtil calls totalAssetValues(), totalBondValues() and totalStockValues() one after the
+ * other, and each of them walks the whole list. A report that needs the totals, the counts and
+ * the smallest and largest asset of every type would walk it a dozen times.
+ * AssetSummary computes all of those figures for every AssetType in a single pass. The
+ * figures are kept in long[]s indexed by the ordinal of the type, so adding an asset is four
+ * array updates and no lookup.
+ * For large portfolios, the parallel variants split the assets in halves, recursively, on the
+ * fork/join pool, summarize the halves independently and merge the summaries.
+ */
+public final class AssetSummary {
+
+    private static final Asset.AssetType[] TYPES = Asset.AssetType.values();
+
+    /*
+    Below this many assets, splitting further costs more than it saves.
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 1 << 16;
+
+    private final long[] totals = new long[TYPES.length];
+    private final long[] counts = new long[TYPES.length];
+    private final long[] mins = new long[TYPES.length];
+    private final long[] maxs = new long[TYPES.length];
+
+    private AssetSummary() {
+        Arrays.fill(mins, Long.MAX_VALUE);
+        Arrays.fill(maxs, Long.MIN_VALUE);
+    }
+
+    private void accept(final int type, final long value) {
+        totals[type] += value;
+        counts[type]++;
+        mins[type] = Math.min(mins[type], value);
+        maxs[type] = Math.max(maxs[type], value);
+    }
+
+    private AssetSummary merge(final AssetSummary other) {
+        for (int type = 0; type < TYPES.length; type++) {
+            totals[type] += other.totals[type];
+            counts[type] += other.counts[type];
+            mins[type] = Math.min(mins[type], other.mins[type]);
+            maxs[type] = Math.max(maxs[type], other.maxs[type]);
+        }
+        return this;
+    }
+
+    public static AssetSummary of(final List<Asset> assets) {
+        final AssetSummary summary = new AssetSummary();
+        for (Asset asset : assets) {
+            summary.accept(asset.getType().ordinal(), asset.getValue());
+        }
+        return summary;
+    }
+
+    public static AssetSummary of(final AssetStore store) {
+        return summarize(store, 0, store.size());
+    }
+
+    private static AssetSummary summarize(final List<Asset> assets, final int from, final int to) {
+        final AssetSummary summary = new AssetSummary();
+        for (int i = from; i < to; i++) {
+            final Asset asset = assets.get(i);
+            summary.accept(asset.getType().ordinal(), asset.getValue());
+        }
+        return summary;
+    }
+
+    private static AssetSummary summarize(final AssetStore store, final int from, final int to) {
+        final byte[] types = store.typeColumn();
+        final long[] values = store.valueColumn();
+        final AssetSummary summary = new AssetSummary();
+        for (int i = from; i < to; i++) {
+            summary.accept(types[i], values[i]);
+        }
+        return summary;
+    }
+
+    /*
+    Splits [from, to) until the pieces are small enough to summarize directly.
+     */
+    @SuppressWarnings("serial")
+    private abstract static class SummaryTask extends RecursiveTask<AssetSummary> {
+
+        final int from;
+        final int to;
+
+        SummaryTask(final int from, final int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        abstract SummaryTask subTask(int from, int to);
+
+        abstract AssetSummary summarize();
+
+        @Override
+        protected AssetSummary compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                return summarize();
+            }
+            final int mid = (from + to) >>> 1;
+            final SummaryTask left = subTask(from, mid);
+            left.fork();
+            final AssetSummary right = subTask(mid, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /*
+    Only lists with fast positional access are split; any other list is summarized in one
+    sequential pass.
+     */
+    public static AssetSummary ofParallel(final List<Asset> assets) {
+        if (!(assets instanceof RandomAccess)) {
+            return of(assets);
+        }
+        @SuppressWarnings("serial")
+        final class ListTask extends SummaryTask {
+            ListTask(final int from, final int to) {
+                super(from, to);
+            }
+
+            @Override
+            SummaryTask subTask(final int from, final int to) {
+                return new ListTask(from, to);
+            }
+
+            @Override
+            AssetSummary summarize() {
+                return AssetSummary.summarize(assets, from, to);
+            }
+        }
+        return ForkJoinPool.commonPool().invoke(new ListTask(0, assets.size()));
+    }
+
+    public static AssetSummary ofParallel(final AssetStore store) {
+        @SuppressWarnings("serial")
+        final class StoreTask extends SummaryTask {
+            StoreTask(final int from, final int to) {
+                super(from, to);
+            }
+
+            @Override
+            SummaryTask subTask(final int from, final int to) {
+                return new StoreTask(from, to);
+            }
+
+            @Override
+            AssetSummary summarize() {
+                return AssetSummary.summarize(store, from, to);
+            }
+        }
+        return ForkJoinPool.commonPool().invoke(new StoreTask(0, store.size()));
+    }
+
+    public long getTotal(final Asset.AssetType type) {
+        return totals[type.ordinal()];
+    }
+
+    public long getCount(final Asset.AssetType type) {
+        return counts[type.ordinal()];
+    }
+
+    /*
+    Long.MAX_VALUE when there are no assets of the type, like LongSummaryStatistics.
+     */
+    public long getMin(final Asset.AssetType type) {
+        return mins[type.ordinal()];
+    }
+
+    /*
+    Long.MIN_VALUE when there are no assets of the type, like LongSummaryStatistics.
+     */
+    public long getMax(final Asset.AssetType type) {
+        return maxs[type.ordinal()];
+    }
+
+    public long getTotal() {
+        return Arrays.stream(totals).sum();
+    }
+
+    public long getCount() {
+        return Arrays.stream(counts).sum();
+    }
+
+    public EnumMap<Asset.AssetType, LongSummaryStatistics> toEnumMap() {
+        final EnumMap<Asset.AssetType, LongSummaryStatistics> map = new EnumMap<>(Asset.AssetType.class);
+        for (Asset.AssetType type : TYPES) {
+            final int i = type.ordinal();
+            map.put(type, new LongSummaryStatistics(counts[i], mins[i], maxs[i], totals[i]));
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return toEnumMap().toString();
+    }
+
+    public static void main(String[] args) {
+
+        final List<Asset> assets = Arrays.asList(
+                new Asset(Asset.AssetType.BOND, 1000),
+                new Asset(Asset.AssetType.BOND, 2000),
+                new Asset(Asset.AssetType.STOCK, 3000),
+                new Asset(Asset.AssetType.STOCK, 4000));
+
+        /*
+        One walk over the assets gives every figure P1AssetUtil needs three walks for, and more.
+         */
+        final AssetSummary summary = AssetSummary.of(assets);
+        System.out.println("Total of all assets: " + summary.getTotal());
+        System.out.println("Total of bonds: " + summary.getTotal(Asset.AssetType.BOND));
+        System.out.println("Total of stocks: " + summary.getTotal(Asset.AssetType.STOCK));
+        System.out.println("Largest stock: " + summary.getMax(Asset.AssetType.STOCK));
+        System.out.println(summary);
+
+        /*
+        The parallel variant gives the same figures, split across the fork/join pool.
+         */
+        System.out.println(AssetSummary.ofParallel(AssetStore.of(assets)));
+    }
+}
@@ -0,0 +1,209 @@
+package FunctionalProgrammingInJava.c4DesigningWithLambda;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/***
+ * Decorating the Price Finder with a Cache
+ * P3CalculateNAV asks its priceFinder for a price on every computation. Behind
+ * YahooFinance::getPrice there would be a web service, so that's a remote round trip each time,
+ * even for a ticker we asked about a second ago.
+ * CachingPriceFinder is itself a Function<String, BigDecimal> that wraps another one, so it
+ * drops into P3CalculateNAV's constructor without P3CalculateNAV knowing about it; the same
+ * delegation idea, one level up.
+ * - A price is reused until its time to live is over.
+ * - At most maxSize prices are kept; beyond that the least recently used one is evicted.
+ * - When several threads ask for the same ticker while it's being fetched, only one fetch
+ *   goes out and the others wait for its result (single flight).
+ * - Hits, misses, loads and the time spent loading are counted.
+ */
+public class CachingPriceFinder implements Function<String, BigDecimal> {
+
+    private static final class Entry {
+
+        private final BigDecimal price;
+        private final long expiresAt;
+
+        private Entry(final BigDecimal price, final long expiresAt) {
+            this.price = price;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Function<String, BigDecimal> priceFinder;
+    private final long timeToLiveNanos;
+
+    /*
+    A LinkedHashMap in access order is an LRU list for free: every get() moves the entry to the
+    end, and removeEldestEntry() drops the one at the front. It isn't thread safe, so every
+    access goes through its monitor; the fetches themselves happen outside of it.
+     */
+    private final Map<String, Entry> prices;
+    private final ConcurrentHashMap<String, CompletableFuture<BigDecimal>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CachingPriceFinder(final Function<String, BigDecimal> priceFinder, final Duration timeToLive,
+                              final int maxSize) {
+        if (timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("timeToLive must be positive: " + timeToLive);
+        }
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.priceFinder = Objects.requireNonNull(priceFinder, "priceFinder");
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.prices = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                if (size() > maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public BigDecimal apply(final String ticker) {
+        final BigDecimal cached = cached(ticker);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        final CompletableFuture<BigDecimal> mine = new CompletableFuture<>();
+        final CompletableFuture<BigDecimal> theirs = inFlight.putIfAbsent(ticker, mine);
+        if (theirs != null) {
+            misses.increment();
+            return await(theirs);
+        }
+        try {
+            /*
+            Between our miss and our putIfAbsent(), another caller may have stored the price and
+            left inFlight; look again before fetching it a second time.
+             */
+            final BigDecimal stored = cached(ticker);
+            if (stored != null) {
+                hits.increment();
+                mine.complete(stored);
+                return stored;
+            }
+            misses.increment();
+
+            final long start = System.nanoTime();
+            final BigDecimal price;
+            try {
+                price = Objects.requireNonNull(priceFinder.apply(ticker), () -> "no price for " + ticker);
+            } finally {
+                loads.increment();
+                loadNanos.add(System.nanoTime() - start);
+            }
+            synchronized (prices) {
+                prices.put(ticker, new Entry(price, System.nanoTime() + timeToLiveNanos));
+            }
+            mine.complete(price);
+            return price;
+        } catch (RuntimeException | Error e) {
+            loadFailures.increment();
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(ticker, mine);
+        }
+    }
+
+    private BigDecimal cached(final String ticker) {
+        synchronized (prices) {
+            final Entry entry = prices.get(ticker);
+            return entry != null && System.nanoTime() - entry.expiresAt < 0 ? entry.price : null;
+        }
+    }
+
+    private static BigDecimal await(final CompletableFuture<BigDecimal> fetch) {
+        try {
+            return fetch.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public void invalidate(final String ticker) {
+        synchronized (prices) {
+            prices.remove(ticker);
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public double hitRate() {
+        final long hit = hits.sum();
+        final long total = hit + misses.sum();
+        return total == 0 ? 0.0 : (double) hit / total;
+    }
+
+    public long loads() {
+        return loads.sum();
+    }
+
+    public long loadFailures() {
+        return loadFailures.sum();
+    }
+
+    public double averageLoadMillis() {
+        final long count = loads.sum();
+        return count == 0 ? 0.0 : loadNanos.sum() / 1e6 / count;
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CachingPriceFinder[hitRate=%.2f, hits=%d, misses=%d, loads=%d, failures=%d, "
+                        + "avgLoad=%.3f ms, evictions=%d]",
+                hitRate(), hits(), misses(), loads(), loadFailures(), averageLoadMillis(), evictions());
+    }
+
+    public static void main(String[] args) {
+
+        /*
+        P3CalculateNAV takes the cached price finder like any other Function.
+         */
+        final CachingPriceFinder priceFinder =
+                new CachingPriceFinder(YahooFinance::getPrice, Duration.ofSeconds(30), 1000);
+        final P3CalculateNAV calculateNAV = new P3CalculateNAV(priceFinder);
+
+        System.out.printf("100 shares of Google worth: $%.2f%n", calculateNAV.computeStockWorth("GOOG", 100));
+        System.out.printf("200 shares of Google worth: $%.2f%n", calculateNAV.computeStockWorth("GOOG", 200));
+        System.out.printf("100 shares of Apple worth: $%.2f%n", calculateNAV.computeStockWorth("AAPL", 100));
+        System.out.println(priceFinder);
+    }
+}
@@ -0,0 +1,177 @@
+package FunctionalProgrammingInJava.c4DesigningWithLambda;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/***
+ * Net Asset Value in Fixed Point
+ * P3CalculateNAV.computeStockWorth() multiplies a BigDecimal price by BigDecimal.valueOf(shares), so every
+ * valuation allocates two or three BigDecimals, and summing a portfolio allocates one more per position.
+ * FixedPointNAV does the same arithmetic on plain longs: a price is a number of micro-units (millionths of the
+ * currency unit), so 123.456789 is 123456789. Multiplying by a number of shares and adding up positions is
+ * then exact integer arithmetic, as long as it doesn't overflow; Math.multiplyExact() and Math.addExact()
+ * make sure it doesn't do so silently, by throwing an ArithmeticException instead. A long of micro-units
+ * goes up to about 9.2 trillion.
+ * The priceFinder is a ToLongFunction, so nothing is boxed either. BigDecimals appear only at the edges: when
+ * a price finder that speaks BigDecimal is adapted, and when a worth is reported.
+ */
+public class FixedPointNAV {
+
+    public static final int SCALE = 6;
+    public static final long MICROS_PER_UNIT = 1_000_000L;
+    public static final long MICROS_PER_CENT = 10_000L;
+
+    private final ToLongFunction<String> priceFinder;
+
+    public FixedPointNAV(final ToLongFunction<String> aPriceFinder) {
+        priceFinder = aPriceFinder;
+    }
+
+    /*
+    Adapts a price finder of P3CalculateNAV. A price with more than six decimals can't be represented and
+    fails with an ArithmeticException rather than being rounded.
+     */
+    public static FixedPointNAV of(final Function<String, BigDecimal> priceFinder) {
+        return new FixedPointNAV(ticker -> toMicros(priceFinder.apply(ticker)));
+    }
+
+    /*
+    Adapts a price finder that answers in cents, like SimulatedPriceFeed::nextCents.
+     */
+    public static FixedPointNAV ofCents(final ToLongFunction<String> centsFinder) {
+        return new FixedPointNAV(ticker -> Math.multiplyExact(centsFinder.applyAsLong(ticker), MICROS_PER_CENT));
+    }
+
+    public static long toMicros(final BigDecimal amount) {
+        return amount.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toBigDecimal(final long micros) {
+        return BigDecimal.valueOf(micros, SCALE);
+    }
+
+    public long computeStockWorthMicros(final String ticker, final int shares) {
+        return Math.multiplyExact(priceFinder.applyAsLong(ticker), shares);
+    }
+
+    public BigDecimal computeStockWorth(final String ticker, final int shares) {
+        return toBigDecimal(computeStockWorthMicros(ticker, shares));
+    }
+
+    /*
+    The worth of the positions tickers[i] x shares[i].
+     */
+    public long computePortfolioWorthMicros(final String[] tickers, final int[] shares) {
+        if (tickers.length != shares.length) {
+            throw new IllegalArgumentException("tickers and shares differ in length");
+        }
+        long worth = 0;
+        for (int i = 0; i < tickers.length; i++) {
+            worth = Math.addExact(worth, computeStockWorthMicros(tickers[i], shares[i]));
+        }
+        return worth;
+    }
+
+    public long computePortfolioWorthMicros(final Map<String, Integer> positions) {
+        long worth = 0;
+        for (Map.Entry<String, Integer> position : positions.entrySet()) {
+            worth = Math.addExact(worth, computeStockWorthMicros(position.getKey(), position.getValue()));
+        }
+        return worth;
+    }
+
+    public BigDecimal computePortfolioWorth(final Map<String, Integer> positions) {
+        return toBigDecimal(computePortfolioWorthMicros(positions));
+    }
+
+    public static void main(String[] args) {
+
+        final SplittableRandom random = new SplittableRandom(7);
+        final int positions = 5_000;
+        final String[] tickers = new String[positions];
+        final int[] shares = new int[positions];
+        final Map<String, BigDecimal> prices = new HashMap<>();
+        final Map<String, Long> micros = new HashMap<>();
+        for (int i = 0; i < positions; i++) {
+            tickers[i] = "T" + i;
+            shares[i] = random.nextInt(1, 100_000);
+            final long price = random.nextLong(1, 5_000 * MICROS_PER_UNIT);
+            prices.put(tickers[i], toBigDecimal(price));
+            micros.put(tickers[i], price);
+        }
+
+        final P3CalculateNAV bigDecimalNAV = new P3CalculateNAV(prices::get);
+        final FixedPointNAV fixedPointNAV = new FixedPointNAV(micros::get);
+
+        /*
+        Exactness: every position and the whole portfolio come out the same both ways, to the last micro-unit.
+         */
+        BigDecimal expected = BigDecimal.ZERO;
+        int mismatches = 0;
+        for (int i = 0; i < positions; i++) {
+            final BigDecimal worth = bigDecimalNAV.computeStockWorth(tickers[i], shares[i]);
+            expected = expected.add(worth);
+            if (worth.compareTo(fixedPointNAV.computeStockWorth(tickers[i], shares[i])) != 0) {
+                mismatches++;
+            }
+        }
+        final BigDecimal actual = toBigDecimal(fixedPointNAV.computePortfolioWorthMicros(tickers, shares));
+        System.out.println("Position mismatches: " + mismatches);
+        System.out.println("Portfolio worth: " + actual + (actual.compareTo(expected) == 0 ? " (exact)" : " MISMATCH " + expected));
+        System.out.println("Through P3CalculateNAV's price finder: " + FixedPointNAV.of(prices::get).computeStockWorth("T0", shares[0]));
+
+        /*
+        Overflow is an error, not a wrong number.
+         */
+        try {
+            new FixedPointNAV(ticker -> Long.MAX_VALUE / 2).computeStockWorthMicros("BIG", 3);
+        } catch (ArithmeticException e) {
+            System.out.println("Overflow detected: " + e.getMessage());
+        }
+
+        /*
+        Throughput, valuing the same portfolio over and over; the prices are looked up from arrays in both
+        cases, so only the arithmetic differs.
+         */
+        final BigDecimal[] bigDecimalPrices = new BigDecimal[positions];
+        final long[] microPrices = new long[positions];
+        final Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < positions; i++) {
+            bigDecimalPrices[i] = prices.get(tickers[i]);
+            microPrices[i] = micros.get(tickers[i]);
+            index.put(tickers[i], i);
+        }
+        final P3CalculateNAV bigDecimalBench = new P3CalculateNAV(ticker -> bigDecimalPrices[index.get(ticker)]);
+        final FixedPointNAV fixedPointBench = new FixedPointNAV(ticker -> microPrices[index.get(ticker)]);
+
+        for (int round = 0; round < 2; round++) {
+            final String label = round == 0 ? "warm-up " : "measured";
+            long start = System.nanoTime();
+            long valuations = 0;
+            BigDecimal bigDecimalWorth = BigDecimal.ZERO;
+            while (System.nanoTime() - start < 1_000_000_000L) {
+                bigDecimalWorth = BigDecimal.ZERO;
+                for (int i = 0; i < positions; i++) {
+                    bigDecimalWorth = bigDecimalWorth.add(bigDecimalBench.computeStockWorth(tickers[i], shares[i]));
+                }
+                valuations += positions;
+            }
+            System.out.printf("%s BigDecimal:  %,12.0f positions/s%n", label, valuations / ((System.nanoTime() - start) / 1e9));
+
+            start = System.nanoTime();
+            valuations = 0;
+            long fixedPointWorth = 0;
+            while (System.nanoTime() - start < 1_000_000_000L) {
+                fixedPointWorth = fixedPointBench.computePortfolioWorthMicros(tickers, shares);
+                valuations += positions;
+            }
+            System.out.printf("%s fixed point: %,12.0f positions/s%s%n", label, valuations / ((System.nanoTime() - start) / 1e9),
+                    toBigDecimal(fixedPointWorth).compareTo(bigDecimalWorth) == 0 ? "" : " MISMATCH");
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package FunctionalProgrammingInJava.c4DesigningWithLambda;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/***
+ * Prices from a price service over HTTP, the way YahooFinance.getPrice() would get them: one ticker at a time
+ * through apply(), which fits P3CalculateNAV's priceFinder, or many tickers in one request through
+ * getPrices(), which fits its bulk price finder.
+ *   new P3CalculateNAV(finder, finder::getPrices, 100, 16)
+ * The HttpClient keeps its connections open and is shared by all the threads that call in.
+ */
+public final class HttpPriceFinder implements Function<String, BigDecimal> {
+
+    private final HttpClient client;
+    private final URI baseUri;
+    private final Duration timeout;
+
+    public HttpPriceFinder(final URI baseUri, final Duration timeout) {
+        this.baseUri = baseUri;
+        this.timeout = timeout;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+    }
+
+    @Override
+    public BigDecimal apply(final String ticker) {
+        final BigDecimal price = getPrices(List.of(ticker)).get(ticker);
+        if (price == null) {
+            throw new IllegalStateException("no price for " + ticker);
+        }
+        return price;
+    }
+
+    public Map<String, BigDecimal> getPrices(final List<String> tickers) {
+        final String symbols = URLEncoder.encode(String.join(",", tickers), StandardCharsets.UTF_8);
+        final HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/prices?s=" + symbols))
+                .timeout(timeout)
+                .GET()
+                .build();
+        final HttpResponse<String> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while fetching prices", e);
+        }
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("price service answered " + response.statusCode());
+        }
+
+        final Map<String, BigDecimal> prices = new HashMap<>();
+        response.body().lines().forEach(line -> {
+            final int comma = line.indexOf(',');
+            prices.put(line.substring(0, comma), new BigDecimal(line.substring(comma + 1)));
+        });
+        return prices;
+    }
+}
@@ -0,0 +1,115 @@
+package FunctionalProgrammingInJava.c4DesigningWithLambda;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/***
+ * A Stand-in for the Price Service
+ * YahooFinance.getPrice() would call a web service; to measure how P3CalculateNAV behaves against one, without
+ * the network or a real quote feed, LocalPriceServer serves prices over HTTP on the loopback interface.
+ *   GET /prices?s=GOOG,AAPL  answers one line per ticker: GOOG,123.45
+ * Every request waits for a configurable latency before answering, like a remote service would, and the price
+ * of a ticker is derived from its name, so it's the same on every request and every run.
+ * The JDK server writes the headers and the body of a response separately; with Nagle's algorithm on, the body
+ * then waits for the client's delayed ACK, some 40 ms per request, which swamps the latency being measured.
+ * Benchmarks should therefore run with -Dsun.net.httpserver.nodelay=true, or set that property before the first
+ * server starts, as PortfolioBenchmark does. It's a JVM-wide setting, so LocalPriceServer leaves it to them.
+ */
+public final class LocalPriceServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMillis;
+
+    private LocalPriceServer(final Duration latency) throws IOException {
+        this.latencyMillis = latency.toMillis();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.executor = Executors.newCachedThreadPool(task -> {
+            final Thread thread = new Thread(task, "price-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/prices", this::handle);
+    }
+
+    /*
+    Starts a server on a free port.
+     */
+    public static LocalPriceServer start(final Duration latency) throws IOException {
+        final LocalPriceServer priceServer = new LocalPriceServer(latency);
+        priceServer.server.start();
+        return priceServer;
+    }
+
+    public URI uri() {
+        return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+    }
+
+    /*
+    The price every request answers for the ticker: between 1.00 and 1000.99.
+     */
+    public static BigDecimal priceOf(final String ticker) {
+        return BigDecimal.valueOf(Math.floorMod(ticker.hashCode() * 0x9E3779B9, 100_000) + 100, 2);
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            final String tickers = parameter(exchange.getRequestURI().getRawQuery(), "s");
+            if (tickers == null || tickers.isEmpty()) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            final StringBuilder body = new StringBuilder();
+            for (String ticker : tickers.split(",")) {
+                body.append(ticker).append(',').append(priceOf(ticker).toPlainString()).append('\n');
+            }
+            final byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/csv; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String parameter(final String query, final String name) {
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            final int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,50 @@
+package FunctionalProgrammingInJava.c4DesigningWithLambda;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * Where P3CalculateNAV runs its price lookups.
+ * A lookup spends nearly all of its time waiting for the price service, so on a JDK with virtual threads
+ * (21 and later) every lookup gets a virtual thread of its own. The project still compiles against older JDKs,
+ * so that executor is looked up reflectively; where it's missing we fall back to a cached pool of daemon
+ * platform threads, which also starts a fresh thread per lookup when all others are busy.
+ */
+final class LookupExecutor {
+
+    private static final ExecutorService EXECUTOR;
+    private static final boolean VIRTUAL_THREADS;
+
+    static {
+        ExecutorService executor;
+        boolean virtualThreads;
+        try {
+            executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            virtualThreads = true;
+        } catch (ReflectiveOperationException | RuntimeException noVirtualThreads) {
+            final AtomicInteger count = new AtomicInteger();
+            executor = Executors.newCachedThreadPool(task -> {
+                final Thread thread = new Thread(task, "price-lookup-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            virtualThreads = false;
+        }
+        EXECUTOR = executor;
+        VIRTUAL_THREADS = virtualThreads;
+    }
+
+    private LookupExecutor() {
+    }
+
+    static ExecutorService executor() {
+        return EXECUTOR;
+    }
+
+    static boolean usesVirtualThreads() {
+        return VIRTUAL_THREADS;
+    }
+}
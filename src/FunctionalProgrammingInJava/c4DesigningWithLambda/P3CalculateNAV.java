@@ -1,7 +1,15 @@
 package FunctionalProgrammingInJava.c4DesigningWithLambda;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /***
  * Delegating Using Lambda Expression
@@ -17,13 +25,42 @@ public class P3CalculateNAV {
      */
     private Function<String, BigDecimal> priceFinder;
 
+    /**
+     * For whole portfolios, a price finder that looks up many tickers in one request. When none is given, a
+     * batch is looked up one ticker at a time through the priceFinder.
+     */
+    private final Function<List<String>, Map<String, BigDecimal>> bulkPriceFinder;
+
+    private final int batchSize;
+    private final int maxConcurrentLookups;
+
     /**
      * Let's initialize the field through a constructor injection rather than coupling to an implementation
      * directly within the class. In effect we're using dependency injection and the dependency inversion
      * principle.
      */
     public P3CalculateNAV(final Function<String, BigDecimal> aPriceFinder) {
+        this(aPriceFinder,
+                tickers -> tickers.stream()
+                        .distinct()
+                        .collect(Collectors.toMap(ticker -> ticker, aPriceFinder)),
+                100, 16);
+    }
+
+    /**
+     * Injects a bulk price finder as well, with how many tickers go into one lookup and how many lookups may be
+     * in flight at the same time.
+     */
+    public P3CalculateNAV(final Function<String, BigDecimal> aPriceFinder,
+                          final Function<List<String>, Map<String, BigDecimal>> aBulkPriceFinder,
+                          final int aBatchSize, final int aMaxConcurrentLookups) {
+        if (aBatchSize < 1 || aMaxConcurrentLookups < 1) {
+            throw new IllegalArgumentException("batchSize and maxConcurrentLookups must be positive");
+        }
         priceFinder = aPriceFinder;
+        bulkPriceFinder = aBulkPriceFinder;
+        batchSize = aBatchSize;
+        maxConcurrentLookups = aMaxConcurrentLookups;
     }
 
     /**
@@ -34,11 +71,79 @@ public class P3CalculateNAV {
         return priceFinder.apply(ticker).multiply(BigDecimal.valueOf(shares));
     }
 
+    /**
+     * Values a whole portfolio of ticker -> shares. Rather than one priceFinder call per position, the tickers
+     * are split into batches, each batch is priced with one bulk lookup, and the lookups run on virtual threads
+     * where the JDK has them. A semaphore keeps at most maxConcurrentLookups of them in flight, so a 5,000-line
+     * portfolio doesn't turn into 50 simultaneous requests against the price service. Once a lookup has failed, no
+     * more are started, and the failure is thrown.
+     */
+    public BigDecimal computePortfolioWorth(final Map<String, Integer> positions) {
+        final ExecutorService executor = LookupExecutor.executor();
+        final Semaphore lookups = new Semaphore(maxConcurrentLookups);
+        final List<String> tickers = new ArrayList<>(positions.keySet());
+        final List<CompletableFuture<BigDecimal>> batches = new ArrayList<>();
+        final CompletableFuture<Void> failed = new CompletableFuture<>();
+
+        try {
+            for (int from = 0; from < tickers.size() && !failed.isDone(); from += batchSize) {
+                final List<String> batch = tickers.subList(from, Math.min(from + batchSize, tickers.size()));
+                lookups.acquire();
+                if (failed.isDone()) {
+                    lookups.release();
+                    break;
+                }
+                final CompletableFuture<BigDecimal> worth;
+                try {
+                    worth = CompletableFuture.supplyAsync(() -> computeBatchWorth(batch, positions), executor);
+                } catch (RuntimeException e) {
+                    lookups.release();
+                    throw e;
+                }
+                worth.whenComplete((value, failure) -> {
+                    lookups.release();
+                    if (failure != null) {
+                        failed.completeExceptionally(failure);
+                    }
+                });
+                batches.add(worth);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batches.forEach(batch -> batch.cancel(true));
+            throw new IllegalStateException("interrupted while valuing the portfolio", e);
+        }
+
+        try {
+            return batches.stream()
+                    .map(CompletableFuture::join)
+                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    private BigDecimal computeBatchWorth(final List<String> tickers, final Map<String, Integer> positions) {
+        final Map<String, BigDecimal> prices = bulkPriceFinder.apply(tickers);
+        BigDecimal worth = BigDecimal.ZERO;
+        for (String ticker : tickers) {
+            final BigDecimal price = prices.get(ticker);
+            if (price == null) {
+                throw new IllegalStateException("no price for " + ticker);
+            }
+            worth = worth.add(price.multiply(BigDecimal.valueOf(positions.get(ticker))));
+        }
+        return worth;
+    }
+
     // ... other methods that use the priceFinder ...
 
     public static void main(String[] args) {
         final P3CalculateNAV calculateNAV = new P3CalculateNAV(YahooFinance::getPrice);
 
         System.out.printf("100 shares of Google worth: $%.2f%n", calculateNAV.computeStockWorth("GOOG", 100));
+
+        final Map<String, Integer> portfolio = Map.of("GOOG", 100, "AAPL", 200, "MSFT", 150);
+        System.out.printf("Portfolio worth: $%.2f%n", calculateNAV.computePortfolioWorth(portfolio));
     }
 }
@@ -1,8 +1,10 @@
 package FunctionalProgrammingInJava.c4DesigningWithLambda;
 
 import java.awt.*;
+import java.util.Arrays;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
 import java.util.stream.Stream;
 
 /***
@@ -36,6 +38,12 @@ public class P4Camera {
      */
     private Function<Color, Color> filter;
 
+    /*
+    The same filter, on pixels packed into ints as 0xAARRGGBB, for capturing whole frames.
+    Checkout PixelFilters.
+     */
+    private IntUnaryOperator pixelFilter;
+
     /*
     We have a constructor that simply sets the filter to the dummy filter.
     Checkout the description for setFilters() method.
@@ -59,6 +67,19 @@ public class P4Camera {
         filter = Stream.of(filters)
                 .reduce((filter, next) -> filter.compose(next))
                 .orElse(color -> color);
+        pixelFilter = filters.length == 0 ? IntUnaryOperator.identity() : PixelFilters.adapt(filter);
+    }
+
+    /*
+    The same chaining for filters on packed pixels. IntUnaryOperator has its own compose(), so the chain is
+    fused into one function on ints, applied in the same order as with setFilters(), and no Color is created
+    along the way. capture(Color) keeps working, through the packed filter.
+     */
+    public void setPixelFilters(final IntUnaryOperator... filters) {
+        pixelFilter = Stream.of(filters)
+                .reduce((filter, next) -> filter.compose(next))
+                .orElse(IntUnaryOperator.identity());
+        filter = PixelFilters.toColorFilter(pixelFilter);
     }
 
     public Color capture(final Color inputColor) {
@@ -67,6 +88,17 @@ public class P4Camera {
         return processedColor;
     }
 
+    /*
+    Captures a whole frame of packed pixels. The pixels are independent of each other, so they're filtered
+    in parallel.
+     */
+    public int[] capture(final int[] inputPixels) {
+        final IntUnaryOperator pixelFilter = this.pixelFilter;
+        final int[] processedPixels = new int[inputPixels.length];
+        Arrays.parallelSetAll(processedPixels, i -> pixelFilter.applyAsInt(inputPixels[i]));
+        return processedPixels;
+    }
+
     //... other functions that use the filter ...
 
     public static void main(String[] args) {
@@ -115,6 +147,12 @@ public class P4Camera {
         camera.setFilters(Color::brighter, Color::darker);
         printCaptured.accept("brighter & darker filter");
 
+        /*
+        The same chain on packed pixels, without creating a Color per filter.
+         */
+        camera.setPixelFilters(PixelFilters::brighter, PixelFilters::darker);
+        printCaptured.accept("packed brighter & darker filter");
+
         /*
         We designed object chaining and implemented the decorator pattern without having to create a
         hierarchy of classes using the Function interface.
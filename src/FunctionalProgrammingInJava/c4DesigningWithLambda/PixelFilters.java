@@ -0,0 +1,122 @@
+package FunctionalProgrammingInJava.c4DesigningWithLambda;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+
+/***
+ * Filters on Packed Pixels
+ * The filters of P4Camera are Function<Color, Color>s, so a chain of them creates a new Color per filter per
+ * pixel; a 12-megapixel frame through two filters is 24 million Colors for the garbage collector.
+ * A pixel fits in an int, packed as 0xAARRGGBB, the same way Color.getRGB() returns it. A filter from int to
+ * int is an IntUnaryOperator, and IntUnaryOperator has compose() too, so a chain of them still composes into
+ * one function, which now runs on ints only.
+ * brighter() and darker() do exactly what Color.brighter() and Color.darker() do, pixel for pixel. Any other
+ * Color filter can be adapted with adapt(); it then works on packed pixels, though it still allocates.
+ */
+public final class PixelFilters {
+
+    /*
+    The same factor java.awt.Color uses.
+     */
+    private static final double FACTOR = 0.7;
+    private static final int MIN_BRIGHTER = (int) (1.0 / (1.0 - FACTOR));
+
+    /*
+    Color changes every channel on its own, so each filter is a table of what becomes of each of the 256
+    channel values, computed once with Color's own arithmetic; filtering a pixel is then three lookups.
+     */
+    private static final int[] BRIGHTER = new int[256];
+    private static final int[] DARKER = new int[256];
+
+    static {
+        for (int channel = 0; channel < 256; channel++) {
+            final int raised = channel > 0 && channel < MIN_BRIGHTER ? MIN_BRIGHTER : channel;
+            BRIGHTER[channel] = Math.min((int) (raised / FACTOR), 255);
+            DARKER[channel] = Math.max((int) (channel * FACTOR), 0);
+        }
+    }
+
+    private PixelFilters() {
+    }
+
+    public static int brighter(final int argb) {
+        /*
+        Like Color.brighter(), black turns into a dark grey. The table already raises a channel that's too
+        small to grow by multiplication.
+         */
+        if ((argb & 0xFFFFFF) == 0) {
+            return argb | MIN_BRIGHTER << 16 | MIN_BRIGHTER << 8 | MIN_BRIGHTER;
+        }
+        return (argb & 0xFF000000)
+                | BRIGHTER[(argb >> 16) & 0xFF] << 16
+                | BRIGHTER[(argb >> 8) & 0xFF] << 8
+                | BRIGHTER[argb & 0xFF];
+    }
+
+    public static int darker(final int argb) {
+        return (argb & 0xFF000000)
+                | DARKER[(argb >> 16) & 0xFF] << 16
+                | DARKER[(argb >> 8) & 0xFF] << 8
+                | DARKER[argb & 0xFF];
+    }
+
+    /*
+    Runs a Color filter on a packed pixel. This keeps every existing filter working with the packed
+    pipeline, at the price of the Colors it creates.
+     */
+    public static IntUnaryOperator adapt(final Function<Color, Color> filter) {
+        return argb -> filter.apply(new Color(argb, true)).getRGB();
+    }
+
+    /*
+    The other way around, for code that still has Colors.
+     */
+    public static Function<Color, Color> toColorFilter(final IntUnaryOperator filter) {
+        return color -> new Color(filter.applyAsInt(color.getRGB()), true);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static void main(String[] args) {
+
+        /*
+        brighter() and darker() agree with Color on every RGB value, with and without transparency.
+         */
+        int mismatches = 0;
+        for (int rgb = 0; rgb <= 0xFFFFFF; rgb++) {
+            for (int alpha : new int[]{0xFF000000, 0x80000000}) {
+                final int argb = alpha | rgb;
+                final Color color = new Color(argb, true);
+                if (brighter(argb) != color.brighter().getRGB() || darker(argb) != color.darker().getRGB()) {
+                    mismatches++;
+                }
+            }
+        }
+        System.out.println("Mismatches with java.awt.Color: " + mismatches);
+
+        /*
+        A 12-megapixel frame through brighter and darker, with Color filters adapted to packed pixels
+        and with the primitive filters.
+         */
+        final int[] frame = new SplittableRandom(1).ints(4000 * 3000).toArray();
+        final P4Camera camera = new P4Camera();
+        int[] adapted = null;
+        int[] primitive = null;
+        for (int round = 0; round < 2; round++) {
+            final String label = round == 0 ? "warm-up " : "measured";
+
+            camera.setFilters(Color::brighter, Color::darker);
+            long start = System.nanoTime();
+            adapted = camera.capture(frame);
+            System.out.printf("%s adapted Color filters: %7.1f ms%n", label, (System.nanoTime() - start) / 1e6);
+
+            camera.setPixelFilters(PixelFilters::brighter, PixelFilters::darker);
+            start = System.nanoTime();
+            primitive = camera.capture(frame);
+            System.out.printf("%s primitive filters:     %7.1f ms%n", label, (System.nanoTime() - start) / 1e6);
+        }
+        System.out.println("Same frame: " + Arrays.equals(adapted, primitive));
+    }
+}
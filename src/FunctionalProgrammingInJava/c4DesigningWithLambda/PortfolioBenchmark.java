@@ -0,0 +1,67 @@
+package FunctionalProgrammingInJava.c4DesigningWithLambda;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/***
+ * Valuing a 5,000-line portfolio against LocalPriceServer, once position by position through
+ * computeStockWorth(), the way it had to be done before, and once through computePortfolioWorth().
+ * Every request to the server takes 2 ms plus the HTTP round trip, so the first way pays that 5,000 times
+ * in a row, while the second pays it 50 times, 16 at a time.
+ * A plain main() harness: a warm-up round first, then the measured one.
+ */
+public class PortfolioBenchmark {
+
+    private static final int POSITIONS = 5_000;
+
+    public static void main(String[] args) throws IOException {
+
+        /*
+        Without TCP_NODELAY, the JDK server adds some 40 ms to every response; see LocalPriceServer. The
+        property is read when the first server starts, and applies to every server in this JVM.
+         */
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+
+        final Map<String, Integer> portfolio = new LinkedHashMap<>();
+        BigDecimal expected = BigDecimal.ZERO;
+        for (int i = 0; i < POSITIONS; i++) {
+            final String ticker = "T" + i;
+            final int shares = 1 + i % 500;
+            portfolio.put(ticker, shares);
+            expected = expected.add(LocalPriceServer.priceOf(ticker).multiply(BigDecimal.valueOf(shares)));
+        }
+
+        try (LocalPriceServer server = LocalPriceServer.start(Duration.ofMillis(2))) {
+            final HttpPriceFinder finder = new HttpPriceFinder(server.uri(), Duration.ofSeconds(10));
+            final P3CalculateNAV calculateNAV = new P3CalculateNAV(finder, finder::getPrices, 100, 16);
+
+            System.out.println("Virtual threads: " + LookupExecutor.usesVirtualThreads());
+            System.out.println("Expected worth: " + expected);
+
+            final Supplier<BigDecimal> oneByOne = () -> portfolio.entrySet().stream()
+                    .map(position -> calculateNAV.computeStockWorth(position.getKey(), position.getValue()))
+                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+            final Supplier<BigDecimal> bulk = () -> calculateNAV.computePortfolioWorth(portfolio);
+
+            for (int round = 0; round < 2; round++) {
+                final String label = round == 0 ? "warm-up" : "measured";
+                time(label + " computeStockWorth x " + POSITIONS, oneByOne, expected);
+                time(label + " computePortfolioWorth", bulk, expected);
+            }
+        }
+    }
+
+    private static void time(final String label, final Supplier<BigDecimal> valuation, final BigDecimal expected) {
+        final long start = System.nanoTime();
+        final BigDecimal worth = valuation.get();
+        final long elapsed = System.nanoTime() - start;
+        System.out.printf("%-40s %8.1f ms  %s%n", label, elapsed / 1e6,
+                worth.compareTo(expected) == 0 ? "ok" : "MISMATCH " + worth);
+    }
+}
@@ -0,0 +1,30 @@
+package FunctionalProgrammingInJava.c4DesigningWithLambda;
+
+import java.util.Objects;
+
+/***
+ * A new price for a ticker, in micro-units like FixedPointNAV, as it comes from a price stream.
+ */
+public final class PriceTick {
+
+    private final String ticker;
+    private final long priceMicros;
+
+    public PriceTick(final String ticker, final long priceMicros) {
+        this.ticker = Objects.requireNonNull(ticker, "ticker");
+        this.priceMicros = priceMicros;
+    }
+
+    public String getTicker() {
+        return ticker;
+    }
+
+    public long getPriceMicros() {
+        return priceMicros;
+    }
+
+    @Override
+    public String toString() {
+        return ticker + "@" + FixedPointNAV.toBigDecimal(priceMicros);
+    }
+}
@@ -0,0 +1,141 @@
+package FunctionalProgrammingInJava.c4DesigningWithLambda;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/***
+ * A Price Feed for Load Tests
+ * YahooFinance.getPrice() stands in for the web service with a new Random and a new BigDecimal on every call,
+ * and the price it returns has nothing to do with the one before. In a NAV load test that makes it the biggest
+ * source of garbage, and the prices don't behave like prices.
+ * SimulatedPriceFeed gives every ticker its own random walk: each tick moves the price by a random step of at
+ * most volatilityBps basis points. A walk is seeded from the feed's seed and the ticker, so the same seed gives
+ * the same prices in every run, whatever other tickers are asked for in between.
+ * Prices come out as long cents. nextCents() and nextPrice() tick without allocating anything; getPrice() fits
+ * P3CalculateNAV's priceFinder, and only there is a BigDecimal made.
+ */
+public final class SimulatedPriceFeed {
+
+    /*
+    One ticker's walk. The lock is only ever contended by threads ticking the same ticker.
+    The walk itself moves in micro-units, a ten-thousandth of a cent, so even a step of a
+    basis point of a cheap stock is more than nothing; in cents, anything below $10.00 would
+    round every ten-basis-point step to zero and freeze. Prices go out rounded to cents, and
+    never below one cent.
+     */
+    private static final class Walk {
+
+        private static final long MICROS_PER_CENT = 10_000;
+
+        private final SplittableRandom random;
+        private long micros;
+
+        private Walk(final long seed) {
+            this.random = new SplittableRandom(seed);
+            this.micros = (1_000 + random.nextLong(50_000)) * MICROS_PER_CENT;
+        }
+
+        private synchronized long next(final int volatilityBps) {
+            final long step = micros * random.nextInt(-volatilityBps, volatilityBps + 1) / 10_000;
+            micros = Math.max(MICROS_PER_CENT, micros + step);
+            return toCents(micros);
+        }
+
+        private synchronized long current() {
+            return toCents(micros);
+        }
+
+        private static long toCents(final long micros) {
+            return (micros + MICROS_PER_CENT / 2) / MICROS_PER_CENT;
+        }
+    }
+
+    private final long seed;
+    private final int volatilityBps;
+    private final ConcurrentHashMap<String, Walk> walks = new ConcurrentHashMap<>();
+
+    public SimulatedPriceFeed(final long seed, final int volatilityBps) {
+        if (volatilityBps < 0 || volatilityBps > 10_000) {
+            throw new IllegalArgumentException("volatilityBps must be between 0 and 10000: " + volatilityBps);
+        }
+        this.seed = seed;
+        this.volatilityBps = volatilityBps;
+    }
+
+    /*
+    Ten basis points per tick.
+     */
+    public SimulatedPriceFeed(final long seed) {
+        this(seed, 10);
+    }
+
+    private Walk walk(final String ticker) {
+        final Walk walk = walks.get(ticker);
+        return walk != null ? walk : walks.computeIfAbsent(ticker, this::newWalk);
+    }
+
+    private Walk newWalk(final String ticker) {
+        return new Walk(seed ^ (ticker.hashCode() * 0x9E3779B97F4A7C15L));
+    }
+
+    /*
+    Moves the ticker's price one step and returns it, in cents.
+     */
+    public long nextCents(final String ticker) {
+        return walk(ticker).next(volatilityBps);
+    }
+
+    public double nextPrice(final String ticker) {
+        return nextCents(ticker) / 100.0;
+    }
+
+    /*
+    The ticker's price without moving it, in cents.
+     */
+    public long currentCents(final String ticker) {
+        return walk(ticker).current();
+    }
+
+    /*
+    The priceFinder of P3CalculateNAV: new P3CalculateNAV(feed::getPrice).
+     */
+    public BigDecimal getPrice(final String ticker) {
+        return BigDecimal.valueOf(nextCents(ticker), 2);
+    }
+
+    public static void main(String[] args) {
+
+        final SimulatedPriceFeed feed = new SimulatedPriceFeed(42);
+
+        /*
+        A plug-in replacement for YahooFinance::getPrice, with prices that move like prices.
+         */
+        final P3CalculateNAV calculateNAV = new P3CalculateNAV(feed::getPrice);
+        for (int i = 0; i < 3; i++) {
+            System.out.printf("100 shares of Google worth: $%.2f%n", calculateNAV.computeStockWorth("GOOG", 100));
+        }
+
+        /*
+        Ticks per second over a thousand tickers, one thread, after a warm-up round.
+         */
+        final String[] tickers = new String[1_000];
+        for (int i = 0; i < tickers.length; i++) {
+            tickers[i] = "T" + i;
+        }
+        for (int round = 0; round < 2; round++) {
+            final long start = System.nanoTime();
+            long ticks = 0;
+            long checksum = 0;
+            while (System.nanoTime() - start < 1_000_000_000L) {
+                for (String ticker : tickers) {
+                    checksum += feed.nextCents(ticker);
+                }
+                ticks += tickers.length;
+            }
+            final double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%s: %,.0f ticks/s (checksum %d)%n",
+                    round == 0 ? "warm-up" : "measured", ticks / seconds, checksum);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package FunctionalProgrammingInJava.c4DesigningWithLambda;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/***
+ * Keeping the Net Asset Value Current
+ * With P3CalculateNAV, knowing the worth of a portfolio after a price moved means valuing every position again.
+ * StreamingNAV values the portfolio once, with the same kind of priceFinder P3CalculateNAV takes, and then
+ * subscribes to a stream of PriceTicks. A tick changes the worth of one position only, by
+ * (new price - old price) x shares, so that difference is all that's added to the running NAV. Reading the NAV
+ * is reading one AtomicLong, whatever the size of the portfolio.
+ * Ticks can come in faster than they're applied. Only the latest price of a ticker matters, so a tick is
+ * parked in a map by ticker, where it replaces any tick of the same ticker that hasn't been applied yet
+ * (conflation), and a single drain task applies whatever is parked. However bursty the stream, the backlog
+ * is at most one tick per ticker, and the subscriber can take everything the publisher offers.
+ */
+public class StreamingNAV implements Flow.Subscriber<PriceTick> {
+
+    /*
+    Only the drain task touches priceMicros, and only one drain task runs at a time.
+     */
+    private static final class Position {
+
+        private final int shares;
+        private long priceMicros;
+
+        private Position(final int shares, final long priceMicros) {
+            this.shares = shares;
+            this.priceMicros = priceMicros;
+        }
+    }
+
+    private final Map<String, Position> positions = new HashMap<>();
+    private final AtomicLong navMicros = new AtomicLong();
+
+    private final ConcurrentHashMap<String, PriceTick> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final Executor executor;
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder conflated = new LongAdder();
+
+    private final CompletableFuture<BigDecimal> completion = new CompletableFuture<>();
+    private volatile boolean done;
+
+    public StreamingNAV(final Map<String, Integer> portfolio, final Function<String, BigDecimal> priceFinder,
+                        final Executor executor) {
+        this.executor = executor;
+        long nav = 0;
+        for (Map.Entry<String, Integer> position : portfolio.entrySet()) {
+            final long priceMicros = FixedPointNAV.toMicros(priceFinder.apply(position.getKey()));
+            positions.put(position.getKey(), new Position(position.getValue(), priceMicros));
+            nav = Math.addExact(nav, Math.multiplyExact(priceMicros, position.getValue()));
+        }
+        navMicros.set(nav);
+    }
+
+    public StreamingNAV(final Map<String, Integer> portfolio, final Function<String, BigDecimal> priceFinder) {
+        this(portfolio, priceFinder, ForkJoinPool.commonPool());
+    }
+
+    /*
+    Conflation keeps the backlog bounded, so there's no reason to hold the publisher back.
+     */
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(final PriceTick tick) {
+        received.increment();
+        if (!positions.containsKey(tick.getTicker())) {
+            return;
+        }
+        if (pending.put(tick.getTicker(), tick) != null) {
+            conflated.increment();
+        }
+        scheduleDrain();
+    }
+
+    @Override
+    public void onError(final Throwable failure) {
+        done = true;
+        completion.completeExceptionally(failure);
+    }
+
+    @Override
+    public void onComplete() {
+        done = true;
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /*
+    Whoever flips draining to true runs the drain, and completes the NAV only while it still owns
+    it, so no other drain can be holding a tick taken out of pending but not applied yet. Before
+    giving up, the drain looks once more for ticks parked, or a completion signalled, after its
+    last pass, since their onNext() or onComplete() found it still running and didn't schedule
+    another. A tick that can't be applied fails completion(), but doesn't stop the ticks after it.
+     */
+    private void drain() {
+        do {
+            try {
+                for (String ticker : pending.keySet()) {
+                    final PriceTick tick = pending.remove(ticker);
+                    if (tick != null) {
+                        apply(tick);
+                    }
+                }
+                if (done && pending.isEmpty()) {
+                    completion.complete(nav());
+                }
+            } catch (RuntimeException e) {
+                completion.completeExceptionally(e);
+            } finally {
+                draining.set(false);
+            }
+        } while ((!pending.isEmpty() || done && !completion.isDone()) && draining.compareAndSet(false, true));
+    }
+
+    /*
+    Nothing changes unless the whole delta fits, so a tick that overflows leaves the NAV and the
+    position as they were.
+     */
+    private void apply(final PriceTick tick) {
+        final Position position = positions.get(tick.getTicker());
+        final long delta = Math.multiplyExact(tick.getPriceMicros() - position.priceMicros, position.shares);
+        navMicros.getAndAccumulate(delta, Math::addExact);
+        position.priceMicros = tick.getPriceMicros();
+        applied.increment();
+    }
+
+    public long navMicros() {
+        return navMicros.get();
+    }
+
+    public BigDecimal nav() {
+        return FixedPointNAV.toBigDecimal(navMicros.get());
+    }
+
+    /*
+    Completes with the final NAV once the stream has completed and every parked tick is applied.
+     */
+    public CompletableFuture<BigDecimal> completion() {
+        return completion;
+    }
+
+    public long ticksReceived() {
+        return received.sum();
+    }
+
+    public long ticksApplied() {
+        return applied.sum();
+    }
+
+    public long ticksConflated() {
+        return conflated.sum();
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        final SimulatedPriceFeed feed = new SimulatedPriceFeed(42);
+        final Map<String, Integer> portfolio = new HashMap<>();
+        for (int i = 0; i < 1_000; i++) {
+            portfolio.put("T" + i, 1 + i % 250);
+        }
+
+        /*
+        Value the portfolio once, then follow a stream of a million ticks.
+         */
+        final StreamingNAV streamingNAV = new StreamingNAV(portfolio, feed::getPrice);
+        System.out.println("Initial NAV: " + streamingNAV.nav());
+
+        final Map<String, Long> lastPrices = new HashMap<>();
+        final long start = System.nanoTime();
+        try (SubmissionPublisher<PriceTick> ticks = new SubmissionPublisher<>()) {
+            ticks.subscribe(streamingNAV);
+            for (int i = 0; i < 1_000_000; i++) {
+                final String ticker = "T" + (i % 1_000);
+                final long priceMicros = feed.nextCents(ticker) * FixedPointNAV.MICROS_PER_CENT;
+                lastPrices.put(ticker, priceMicros);
+                ticks.submit(new PriceTick(ticker, priceMicros));
+                if (i % 250_000 == 0) {
+                    System.out.println("NAV while ticking: " + streamingNAV.nav());
+                }
+            }
+        }
+        final BigDecimal finalNAV = streamingNAV.completion().get(30, TimeUnit.SECONDS);
+        System.out.printf("Final NAV: %s after %.1f ms%n", finalNAV, (System.nanoTime() - start) / 1e6);
+        System.out.printf("Ticks received: %d, applied: %d, conflated: %d%n",
+                streamingNAV.ticksReceived(), streamingNAV.ticksApplied(), streamingNAV.ticksConflated());
+
+        /*
+        The incremental NAV agrees with valuing the portfolio from scratch at the last prices.
+         */
+        final BigDecimal fromScratch = new FixedPointNAV(lastPrices::get).computePortfolioWorth(portfolio);
+        System.out.println("From scratch: " + fromScratch + (fromScratch.compareTo(finalNAV) == 0 ? " (same)" : " MISMATCH"));
+    }
+}
@@ -0,0 +1,204 @@
+package FunctionalProgrammingInJava.c6BeingLazy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/***
+ * Choosing the Order of Lazy Arguments
+ * P3Evaluation.lazyEvaluator() always evaluates its first Supplier before the second one.
+ * With && that's the only order Java knows, but when each evaluation takes seconds, the order
+ * decides how much time we waste: we want to start with the check that is cheap and that
+ * usually decides the result on its own.
+ * AdaptiveLazyEvaluator combines any number of Suppliers with AND or OR, and measures, for
+ * each of them, how long it takes and how often its answer short-circuits the rest (false for
+ * AND, true for OR). Before every evaluation it sorts the Suppliers by expected cost per
+ * decisive answer, so over time the cheapest, most decisive check runs first.
+ * For independent checks, ordering by cost / probability-of-deciding is the order that
+ * minimizes the expected total cost.
+ */
+public class AdaptiveLazyEvaluator {
+
+    public enum Mode {
+        AND(false), OR(true);
+
+        private final boolean decisiveValue;
+
+        Mode(final boolean decisiveValue) {
+            this.decisiveValue = decisiveValue;
+        }
+    }
+
+    /*
+    The per-Supplier bookkeeping. LongAdders keep the evaluator usable from many threads
+    without making the counters a point of contention.
+     */
+    private static final class Input {
+
+        private final String name;
+        private final Supplier<Boolean> supplier;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder decisive = new LongAdder();
+
+        private Input(final String name, final Supplier<Boolean> supplier) {
+            this.name = name;
+            this.supplier = supplier;
+        }
+
+        /*
+        Never measured inputs rank as free, so each of them gets tried at least once. The
+        probability of deciding is smoothed (Laplace) so a single observation doesn't rule
+        an input out forever.
+         */
+        private double rank() {
+            final long n = calls.sum();
+            if (n == 0) {
+                return 0.0;
+            }
+            final double averageCost = (double) nanos.sum() / n;
+            final double decidingProbability = (decisive.sum() + 1.0) / (n + 2.0);
+            return averageCost / decidingProbability;
+        }
+    }
+
+    /*
+    A read-only snapshot of what was observed for one Supplier.
+     */
+    public static final class Statistics {
+
+        private final String name;
+        private final long calls;
+        private final long totalNanos;
+        private final long shortCircuits;
+
+        private Statistics(final Input input) {
+            this.name = input.name;
+            this.calls = input.calls.sum();
+            this.totalNanos = input.nanos.sum();
+            this.shortCircuits = input.decisive.sum();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public double getAverageNanos() {
+            return calls == 0 ? 0.0 : (double) totalNanos / calls;
+        }
+
+        public double getShortCircuitRate() {
+            return calls == 0 ? 0.0 : (double) shortCircuits / calls;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: calls=%d, avg=%.1f us, short-circuit=%.0f%%",
+                    name, calls, getAverageNanos() / 1000, getShortCircuitRate() * 100);
+        }
+    }
+
+    private final Mode mode;
+    private final List<Input> inputs;
+
+    private AdaptiveLazyEvaluator(final Mode mode, final List<Input> inputs) {
+        this.mode = mode;
+        this.inputs = inputs;
+    }
+
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public static AdaptiveLazyEvaluator and(final Supplier<Boolean>... inputs) {
+        return of(Mode.AND, Arrays.asList(inputs));
+    }
+
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public static AdaptiveLazyEvaluator or(final Supplier<Boolean>... inputs) {
+        return of(Mode.OR, Arrays.asList(inputs));
+    }
+
+    public static AdaptiveLazyEvaluator of(final Mode mode, final List<Supplier<Boolean>> inputs) {
+        final List<Input> named = new ArrayList<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            named.add(new Input("input" + (i + 1), Objects.requireNonNull(inputs.get(i))));
+        }
+        return new AdaptiveLazyEvaluator(Objects.requireNonNull(mode), Collections.unmodifiableList(named));
+    }
+
+    /*
+    Evaluates the inputs in the currently best known order and stops at the first decisive
+    answer. With no decisive answer at all, the result is the neutral value of the mode:
+    true for AND, false for OR, same as && and || over the inputs.
+     */
+    public boolean evaluate() {
+        final Input[] order = inputs.toArray(new Input[0]);
+        final double[] ranks = new double[order.length];
+        for (int i = 0; i < order.length; i++) {
+            ranks[i] = order[i].rank();
+        }
+        final Integer[] indexes = new Integer[order.length];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = i;
+        }
+        Arrays.sort(indexes, Comparator.comparingDouble(i -> ranks[i]));
+
+        for (int index : indexes) {
+            final Input input = order[index];
+            final long start = System.nanoTime();
+            final boolean value = input.supplier.get();
+            input.nanos.add(System.nanoTime() - start);
+            input.calls.increment();
+            if (value == mode.decisiveValue) {
+                input.decisive.increment();
+                return value;
+            }
+        }
+        return !mode.decisiveValue;
+    }
+
+    public List<Statistics> statistics() {
+        final List<Statistics> statistics = new ArrayList<>();
+        inputs.forEach(input -> statistics.add(new Statistics(input)));
+        return statistics;
+    }
+
+    /*
+    Helper that makes the cost of a check visible, in place of the commented out
+    simulateTimeConsumingOp() in P3Evaluation.
+     */
+    private static boolean slowEvaluate(final int value, final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return P3Evaluation.evaluate(value);
+    }
+
+    public static void main(String[] args) {
+
+        /*
+        The first check is slow and almost always passes, the second one is fast and always
+        fails. lazyEvaluator() would pay for the slow one every time; after the first couple
+        of rounds, the adaptive evaluator asks the fast, decisive one first.
+         */
+        final AdaptiveLazyEvaluator evaluator = AdaptiveLazyEvaluator.and(
+                () -> slowEvaluate(200, 50),
+                () -> slowEvaluate(2, 1));
+
+        for (int round = 0; round < 5; round++) {
+            System.out.println("accept?: " + evaluator.evaluate());
+        }
+        evaluator.statistics().forEach(System.out::println);
+    }
+}
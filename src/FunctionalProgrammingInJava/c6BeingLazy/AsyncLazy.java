@@ -0,0 +1,125 @@
+package FunctionalProgrammingInJava.c6BeingLazy;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/***
+ * Lazy Without Waiting
+ * With P2Holder or Lazy, the first caller of get() pays for the construction of the heavy
+ * instance on its own thread. AsyncLazy hands out a CompletableFuture instead: the first
+ * call starts the factory on a background thread (a virtual thread when the JDK has them,
+ * see LazyExecutors) and every caller, first or not, gets the same future back immediately.
+ * Callers that can't make progress without the value compose on the future rather than
+ * block on it.
+ * warmUp() starts construction ahead of time, and warmUpAll() does that for many holders
+ * at once, so startup can build several heavy resources in parallel before traffic arrives.
+ * Like Lazy, a failure isn't remembered: the callers that already hold the future see it
+ * fail, and the next get() runs the factory again.
+ */
+public final class AsyncLazy<T> {
+
+    private final Supplier<? extends T> factory;
+    private final Executor executor;
+    private final AtomicReference<CompletableFuture<T>> future = new AtomicReference<>();
+
+    private AsyncLazy(final Supplier<? extends T> factory, final Executor executor) {
+        this.factory = factory;
+        this.executor = executor;
+    }
+
+    public static <T> AsyncLazy<T> of(final Supplier<? extends T> factory) {
+        return of(factory, LazyExecutors.defaultExecutor());
+    }
+
+    public static <T> AsyncLazy<T> of(final Supplier<? extends T> factory, final Executor executor) {
+        return new AsyncLazy<>(Objects.requireNonNull(factory, "factory"),
+                Objects.requireNonNull(executor, "executor"));
+    }
+
+    /*
+    The future is installed with a compareAndSet before the work is submitted, so however
+    many threads race here, only one of them submits the factory. A failed future is taken
+    out again before it completes, so whoever reacts to the failure by calling get() starts
+    a fresh attempt.
+     */
+    public CompletableFuture<T> get() {
+        final CompletableFuture<T> existing = future.get();
+        if (existing != null) {
+            return existing;
+        }
+        final CompletableFuture<T> created = new CompletableFuture<>();
+        if (!future.compareAndSet(null, created)) {
+            return future.get();
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    created.complete(factory.get());
+                } catch (Throwable t) {
+                    fail(created, t);
+                }
+            });
+        } catch (RuntimeException rejected) {
+            fail(created, rejected);
+        }
+        return created;
+    }
+
+    private void fail(final CompletableFuture<T> attempt, final Throwable failure) {
+        future.compareAndSet(attempt, null);
+        attempt.completeExceptionally(failure);
+    }
+
+    /*
+    Starts the construction if nobody has yet, without handing out the future.
+     */
+    public AsyncLazy<T> warmUp() {
+        get();
+        return this;
+    }
+
+    public boolean isDone() {
+        final CompletableFuture<T> current = future.get();
+        return current != null && current.isDone();
+    }
+
+    /*
+    Starts all of the given holders and returns a future that completes when every one of
+    them is done. Following CompletableFuture.allOf(), it completes exceptionally if at
+    least one of them failed.
+     */
+    public static CompletableFuture<Void> warmUpAll(final Collection<? extends AsyncLazy<?>> holders) {
+        return CompletableFuture.allOf(holders.stream()
+                .map(AsyncLazy::get)
+                .toArray(CompletableFuture[]::new));
+    }
+
+    public static CompletableFuture<Void> warmUpAll(final AsyncLazy<?>... holders) {
+        return warmUpAll(Arrays.asList(holders));
+    }
+
+    public static void main(String[] args) {
+
+        final AsyncLazy<Heavy> first = AsyncLazy.of(Heavy::new);
+        final AsyncLazy<Heavy> second = AsyncLazy.of(Heavy::new);
+        System.out.println("virtual threads: " + LazyExecutors.usesVirtualThreads());
+
+        /*
+        Nothing is created until we ask. get() returns right away; we attach what to do with
+        the value instead of waiting for it on this thread.
+         */
+        System.out.println("deferring heavy creation...");
+        first.get().thenAccept(heavy -> System.out.println("first: " + heavy));
+
+        /*
+        At startup we may rather build everything up front, in parallel.
+         */
+        warmUpAll(first, second).join();
+        System.out.println("all warmed up, second: " + second.get().join());
+    }
+}
@@ -0,0 +1,291 @@
+package FunctionalProgrammingInJava.c6BeingLazy;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/***
+ * Remembering Slow Results
+ * Being lazy means not computing what we don't need; being memoized means not computing the
+ * same thing twice. P3Evaluation.evaluate(int) is slow and its callers keep asking for the
+ * same values, so IntMemoizer wraps any IntFunction and remembers its results.
+ * - The table is keyed by the primitive int: open addressing with linear probing over an
+ *   int[] of keys, so no Integer is ever created for a lookup.
+ * - Concurrent callers asking for a value that is being computed wait for that computation
+ *   instead of starting their own (single flight).
+ * - The number of entries is bounded; when the table is full, an entry is evicted using the
+ *   CLOCK policy, a cheap approximation of least-recently-used: every hit marks the entry as
+ *   referenced, and the clock hand clears the marks as it sweeps, evicting the first entry it
+ *   finds unmarked.
+ * - Hits, misses, coalesced waits, evictions and unmemoized (bypassed) misses are counted.
+ * The table is guarded by the memoizer's monitor, but the function itself always runs
+ * outside of it, so a slow computation never blocks lookups of other keys.
+ */
+public class IntMemoizer<V> implements IntFunction<V> {
+
+    /*
+    The largest maxSize whose table, a power of two at least twice as big, still fits an array.
+     */
+    public static final int MAX_SIZE = 1 << 29;
+
+    /*
+    The value of a slot while its computation is still running.
+     */
+    private static final class InFlight {
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+    }
+
+    private final IntFunction<? extends V> function;
+    private final int maxSize;
+
+    private final int[] keys;
+    private final Object[] values;
+    private final boolean[] referenced;
+    private final int mask;
+    private int size;
+    private int inFlight;
+    private int clockHand;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder bypassed = new LongAdder();
+
+    public IntMemoizer(final IntFunction<? extends V> function, final int maxSize) {
+        if (maxSize < 1 || maxSize > MAX_SIZE) {
+            throw new IllegalArgumentException("maxSize must be between 1 and " + MAX_SIZE + ": " + maxSize);
+        }
+        this.function = Objects.requireNonNull(function, "function");
+        this.maxSize = maxSize;
+        // keep the load factor at or below 1/2 so probe sequences stay short
+        final int capacity = Integer.highestOneBit(Math.max(2, maxSize) * 2 - 1) << 1;
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+        this.referenced = new boolean[capacity];
+        this.mask = capacity - 1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V apply(final int key) {
+        final InFlight mine;
+        final InFlight theirs;
+        synchronized (this) {
+            final int slot = find(key);
+            if (slot >= 0 && !(values[slot] instanceof InFlight)) {
+                referenced[slot] = true;
+                hits.increment();
+                return (V) values[slot];
+            }
+            if (slot >= 0) {
+                theirs = (InFlight) values[slot];
+                mine = null;
+                coalesced.increment();
+            } else {
+                theirs = null;
+                misses.increment();
+                makeRoom();
+                if (size < keys.length - 1) {
+                    mine = new InFlight();
+                    insert(key, mine);
+                    inFlight++;
+                } else {
+                    mine = null;
+                    bypassed.increment();
+                }
+            }
+        }
+        if (theirs != null) {
+            return await(theirs);
+        }
+        if (mine != null) {
+            return compute(key, mine);
+        }
+        return Objects.requireNonNull(function.apply(key), "function returned null");
+    }
+
+    @SuppressWarnings("unchecked")
+    private V await(final InFlight other) {
+        try {
+            return (V) other.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /*
+    A failed computation is not remembered: its slot is removed, so the next caller tries
+    again, and the callers waiting on it get the same exception.
+     */
+    private V compute(final int key, final InFlight mine) {
+        final V value;
+        try {
+            value = Objects.requireNonNull(function.apply(key), "function returned null");
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                removeAt(find(key));
+                inFlight--;
+            }
+            mine.result.completeExceptionally(e);
+            throw e;
+        }
+        synchronized (this) {
+            final int slot = find(key);
+            values[slot] = value;
+            referenced[slot] = true;
+            inFlight--;
+        }
+        mine.result.complete(value);
+        return value;
+    }
+
+    private static int hash(final int key) {
+        final int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /*
+    Returns the slot holding the key, or -1. Linear probing stops at the first empty slot,
+    which is why removals shift entries back instead of leaving holes.
+     */
+    private int find(final int key) {
+        for (int slot = hash(key) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /*
+    The caller makes sure at least one slot stays empty after the insert.
+     */
+    private void insert(final int key, final Object value) {
+        int slot = hash(key) & mask;
+        while (values[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        referenced[slot] = false;
+        size++;
+    }
+
+    /*
+    CLOCK eviction. Computations in flight are never evicted; if every entry is in flight, the
+    table is allowed to go over its bound until they complete. It never fills up completely,
+    though: linear probing needs at least one empty slot, so when all but one slot hold
+    computations in flight, apply() computes the value without memoizing it (see bypassed()).
+     */
+    private void makeRoom() {
+        while (size >= maxSize && size > inFlight) {
+            final int slot = clockHand;
+            clockHand = (clockHand + 1) & mask;
+            if (values[slot] == null || values[slot] instanceof InFlight) {
+                continue;
+            }
+            if (referenced[slot]) {
+                referenced[slot] = false;
+            } else {
+                removeAt(slot);
+                evictions.increment();
+            }
+        }
+    }
+
+    /*
+    Backward shift deletion: walk the cluster after the removed slot and move back every
+    entry whose home slot is at or before the hole, so lookups never hit a premature gap.
+     */
+    private void removeAt(final int slot) {
+        int hole = slot;
+        for (int i = (slot + 1) & mask; values[i] != null; i = (i + 1) & mask) {
+            final int home = hash(keys[i]) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                referenced[hole] = referenced[i];
+                hole = i;
+            }
+        }
+        values[hole] = null;
+        referenced[hole] = false;
+        size--;
+    }
+
+    public synchronized int size() {
+        return size - inFlight;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    /*
+    Calls that found the value being computed by another caller and waited for it.
+     */
+    public long coalesced() {
+        return coalesced.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /*
+    Misses computed without being memoized, because the table was full of computations in
+    flight.
+     */
+    public long bypassed() {
+        return bypassed.sum();
+    }
+
+    public double hitRate() {
+        final long hit = hits.sum() + coalesced.sum();
+        final long total = hit + misses.sum();
+        return total == 0 ? 0.0 : (double) hit / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("IntMemoizer[size=%d, hits=%d, misses=%d, coalesced=%d, evictions=%d, bypassed=%d, "
+                        + "hitRate=%.2f]", size(), hits(), misses(), coalesced(), evictions(), bypassed(), hitRate());
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        final IntMemoizer<Boolean> evaluate = new IntMemoizer<>(P3Evaluation::evaluate, 2);
+
+        /*
+        The same argument is evaluated only once, however many threads ask for it at the
+        same time.
+         */
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> evaluate.apply(150));
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        /*
+        The memoizer keeps at most two results; asking for a third one evicts the one that
+        wasn't used since the clock hand last passed.
+         */
+        P3Evaluation.lazyEvaluator(() -> evaluate.apply(150), () -> evaluate.apply(2));
+        P3Evaluation.lazyEvaluator(() -> evaluate.apply(150), () -> evaluate.apply(3));
+        P3Evaluation.lazyEvaluator(() -> evaluate.apply(150), () -> evaluate.apply(2));
+        System.out.println(evaluate);
+    }
+}
@@ -0,0 +1,89 @@
+package FunctionalProgrammingInJava.c6BeingLazy;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/***
+ * Lazy is a reusable, thread safe holder for a value that is expensive to create.
+ * It takes the idea of P2Holder one step further: instead of swapping a Supplier under
+ * a synchronized method, the created value is published through a VarHandle with
+ * release semantics and read back with acquire semantics. Once the value exists, a
+ * call to get() is a single acquire load - no monitor, no lock, no memory fence beyond
+ * what the read itself needs.
+ * Only the threads that arrive before the value is published take the slow path, where
+ * they are mutually exclusive so the factory runs at most once.
+ */
+public final class Lazy<T> implements Supplier<T> {
+
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(Lazy.class, "value", Object.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /*
+    The factory is dropped once the value is created so whatever it captured can be
+    garbage collected. It is only touched on the slow path, under the lock.
+     */
+    private Supplier<? extends T> factory;
+
+    /*
+    Accessed only through the VALUE VarHandle. A null means "not created yet", which is
+    why the factory is not allowed to return null.
+     */
+    @SuppressWarnings("unused")
+    private Object value;
+
+    private final Object lock = new Object();
+
+    private Lazy(final Supplier<? extends T> factory) {
+        this.factory = factory;
+    }
+
+    public static <T> Lazy<T> of(final Supplier<? extends T> factory) {
+        return new Lazy<>(Objects.requireNonNull(factory, "factory"));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get() {
+        final Object current = VALUE.getAcquire(this);
+        if (current != null) {
+            return (T) current;
+        }
+        return createAndPublish();
+    }
+
+    /*
+    Double-checked publication. The re-read inside the lock can be a plain read because
+    the monitor already orders it after any earlier setRelease() done under the same lock.
+     */
+    @SuppressWarnings("unchecked")
+    private T createAndPublish() {
+        synchronized (lock) {
+            Object current = VALUE.get(this);
+            if (current == null) {
+                current = Objects.requireNonNull(factory.get(), "Lazy factory returned null");
+                VALUE.setRelease(this, current);
+                factory = null;
+            }
+            return (T) current;
+        }
+    }
+
+    public boolean isInitialized() {
+        return VALUE.getAcquire(this) != null;
+    }
+
+    @Override
+    public String toString() {
+        final Object current = VALUE.getAcquire(this);
+        return current != null ? "Lazy[" + current + "]" : "Lazy[not initialized]";
+    }
+}
@@ -0,0 +1,53 @@
+package FunctionalProgrammingInJava.c6BeingLazy;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * Where the lazy helpers of this chapter run their background work by default.
+ * On a JDK with virtual threads (21 and later) this is a virtual-thread-per-task executor.
+ * The project itself still compiles against older JDKs, so the executor is looked up
+ * reflectively, and on those JDKs we fall back to a cached pool of daemon platform threads,
+ * which also starts a fresh thread per task when all others are busy.
+ */
+public final class LazyExecutors {
+
+    private static final ExecutorService DEFAULT;
+    private static final boolean VIRTUAL_THREADS;
+
+    static {
+        ExecutorService executor;
+        boolean virtualThreads;
+        try {
+            executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            virtualThreads = true;
+        } catch (ReflectiveOperationException | RuntimeException noVirtualThreads) {
+            final AtomicInteger count = new AtomicInteger();
+            executor = Executors.newCachedThreadPool(task -> {
+                final Thread thread = new Thread(task, "lazy-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            virtualThreads = false;
+        }
+        DEFAULT = executor;
+        VIRTUAL_THREADS = virtualThreads;
+    }
+
+    private LazyExecutors() {
+    }
+
+    public static ExecutorService defaultExecutor() {
+        return DEFAULT;
+    }
+
+    /*
+    Which branch the lookup above took, rather than a guess from the executor's class.
+     */
+    public static boolean usesVirtualThreads() {
+        return VIRTUAL_THREADS;
+    }
+}
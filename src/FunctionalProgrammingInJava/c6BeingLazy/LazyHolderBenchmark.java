@@ -0,0 +1,209 @@
+package FunctionalProgrammingInJava.c6BeingLazy;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/***
+ * A rough comparison of P1HolderNaive, P2Holder and P7LazyHolder under 1 to 64 threads
+ * hammering getHeavy() on a single, already initialized holder.
+ * There is no JMH in this project, so this is a plain main() with a warm-up round. The
+ * numbers are good enough to see the monitor cost of P1HolderNaive grow with the thread
+ * count while P2Holder and P7LazyHolder stay flat.
+ * A second phase, reported separately, measures the cold start: the threads race on a fresh
+ * holder while a factory that takes about a millisecond runs, and we record how long it
+ * takes until the last of them has the value, and how often the factory ran. The three
+ * holders hard-wire the cheap Heavy, so this phase rebuilds their three approaches around
+ * the slow factory: a synchronized getter (P1HolderNaive), a synchronized method that swaps
+ * the supplier (P2Holder), and Lazy (P7LazyHolder).
+ */
+public class LazyHolderBenchmark {
+
+    private static final int CALLS_PER_THREAD = 1_000_000;
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+
+    private static final int COLD_TRIALS = 20;
+    private static final long FACTORY_NANOS = 1_000_000;
+
+    /*
+    P1HolderNaive's approach around any factory.
+     */
+    private static final class SynchronizedHolder implements Supplier<Object> {
+
+        private final Supplier<Object> factory;
+        private Object value;
+
+        private SynchronizedHolder(final Supplier<Object> factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public synchronized Object get() {
+            if (value == null) {
+                value = factory.get();
+            }
+            return value;
+        }
+    }
+
+    /*
+    P2Holder's approach around any factory.
+     */
+    private static final class SwappingHolder implements Supplier<Object> {
+
+        private final Supplier<Object> factory;
+        private Supplier<Object> supplier = this::createAndCache;
+
+        private SwappingHolder(final Supplier<Object> factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public Object get() {
+            return supplier.get();
+        }
+
+        private synchronized Object createAndCache() {
+            if (!(supplier instanceof Cached)) {
+                supplier = new Cached(factory.get());
+            }
+            return supplier.get();
+        }
+
+        private static final class Cached implements Supplier<Object> {
+
+            private final Object instance;
+
+            private Cached(final Object instance) {
+                this.instance = instance;
+            }
+
+            @Override
+            public Object get() {
+                return instance;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        final P1HolderNaive naive = new P1HolderNaive();
+        final P2Holder holder = new P2Holder();
+        final P7LazyHolder lazy = new P7LazyHolder();
+
+        // warm-up, this also creates the three Heavy instances
+        for (int threads : THREAD_COUNTS) {
+            run(threads, naive::getHeavy);
+            run(threads, holder::getHeavy);
+            run(threads, lazy::getHeavy);
+        }
+
+        System.out.printf("%8s %16s %16s %16s%n", "threads", "P1HolderNaive", "P2Holder", "P7LazyHolder");
+        for (int threads : THREAD_COUNTS) {
+            System.out.printf("%8d %13.2f ns %13.2f ns %13.2f ns%n", threads,
+                    run(threads, naive::getHeavy),
+                    run(threads, holder::getHeavy),
+                    run(threads, lazy::getHeavy));
+        }
+
+        final Function<Supplier<Object>, Supplier<Object>> synchronizedHolder = SynchronizedHolder::new;
+        final Function<Supplier<Object>, Supplier<Object>> swappingHolder = SwappingHolder::new;
+        final Function<Supplier<Object>, Supplier<Object>> lazyHolder = Lazy::of;
+
+        // warm-up of the cold start
+        for (int threads : THREAD_COUNTS) {
+            runCold(threads, synchronizedHolder);
+            runCold(threads, swappingHolder);
+            runCold(threads, lazyHolder);
+        }
+
+        System.out.println();
+        System.out.printf("cold start, factory of %.1f ms, until the last thread has the value (factory runs)%n",
+                FACTORY_NANOS / 1e6);
+        System.out.printf("%8s %16s %16s %16s%n", "threads", "synchronized", "swapping", "Lazy");
+        for (int threads : THREAD_COUNTS) {
+            System.out.printf("%8d %16s %16s %16s%n", threads,
+                    runCold(threads, synchronizedHolder),
+                    runCold(threads, swappingHolder),
+                    runCold(threads, lazyHolder));
+        }
+    }
+
+    /*
+    Returns the average wall clock time of one getHeavy() call, as seen by one thread.
+     */
+    private static double run(final int threads, final Supplier<Heavy> getter) throws Exception {
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            final Future<?>[] futures = new Future<?>[threads];
+            for (int i = 0; i < threads; i++) {
+                futures[i] = pool.submit(() -> {
+                    start.await();
+                    int sink = 0;
+                    for (int call = 0; call < CALLS_PER_THREAD; call++) {
+                        sink += System.identityHashCode(getter.get()) & 1;
+                    }
+                    return sink;
+                });
+            }
+            final long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return (double) (System.nanoTime() - begin) / CALLS_PER_THREAD;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /*
+    Over COLD_TRIALS fresh holders, the average time from releasing the threads until the last
+    of them returns from get(), and how many times the factory ran in total; anything above
+    COLD_TRIALS means a holder let the factory run twice.
+     */
+    private static String runCold(final int threads,
+                                  final Function<Supplier<Object>, Supplier<Object>> newHolder) throws Exception {
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            final AtomicInteger factoryRuns = new AtomicInteger();
+            final Supplier<Object> factory = () -> {
+                factoryRuns.incrementAndGet();
+                final long end = System.nanoTime() + FACTORY_NANOS;
+                while (System.nanoTime() - end < 0) {
+                    Thread.onSpinWait();
+                }
+                return new Object();
+            };
+            long totalNanos = 0;
+            for (int trial = 0; trial < COLD_TRIALS; trial++) {
+                final Supplier<Object> holder = newHolder.apply(factory);
+                final CountDownLatch ready = new CountDownLatch(threads);
+                final CountDownLatch start = new CountDownLatch(1);
+                final Future<?>[] futures = new Future<?>[threads];
+                for (int i = 0; i < threads; i++) {
+                    futures[i] = pool.submit(() -> {
+                        ready.countDown();
+                        start.await();
+                        return holder.get();
+                    });
+                }
+                ready.await();
+                final long begin = System.nanoTime();
+                start.countDown();
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+                totalNanos += System.nanoTime() - begin;
+            }
+            return String.format("%6.2f ms (%d)", totalNanos / 1e6 / COLD_TRIALS, factoryRuns.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package FunctionalProgrammingInJava.c6BeingLazy;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/***
+ * A Lazy Sequence That Remembers
+ * A Stream is lazy, but it can only be consumed once: after findFirst() on namesWith3Letters
+ * in P4LazyStreams, asking again means building the pipeline again and repeating every
+ * length() and toUpper() call. A plain List, on the other hand, remembers, but isn't lazy.
+ * LazyList is both. It's a chain of cells; each cell holds an element and a Lazy reference to
+ * the rest of the chain, so an element is computed the first time anybody walks up to it, and
+ * from then on it's simply there. Any number of iterators and streams can walk the same
+ * LazyList, one after the other or at the same time; the Lazy cells make sure every element is
+ * computed exactly once, and safely published to all threads.
+ * The catch is memory: everything computed stays reachable from the LazyList.
+ */
+public final class LazyList<T> implements Iterable<T> {
+
+    private static final class Cell<T> {
+
+        private final T head;
+        private final Lazy<Cell<T>> tail;
+
+        private Cell(final T head, final Lazy<Cell<T>> tail) {
+            this.head = head;
+            this.tail = tail;
+        }
+    }
+
+    /*
+    Marks the end of a finite LazyList.
+     */
+    private static final Cell<?> END = new Cell<>(null, null);
+
+    private final Lazy<Cell<T>> first;
+
+    private LazyList(final Lazy<Cell<T>> first) {
+        this.first = first;
+    }
+
+    /*
+    A LazyList over whatever the iterator produces. The iterator is advanced only as far as
+    the furthest consumer goes, and never twice for the same element. Cells are forced one
+    after the other, so the iterator is never used by two threads at once.
+     */
+    public static <T> LazyList<T> from(final Iterator<? extends T> source) {
+        Objects.requireNonNull(source, "source");
+        return new LazyList<>(next(source));
+    }
+
+    public static <T> LazyList<T> from(final Stream<? extends T> source) {
+        return from(source.iterator());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Lazy<Cell<T>> next(final Iterator<? extends T> source) {
+        return Lazy.of(() -> source.hasNext()
+                ? new Cell<>(source.next(), next(source))
+                : (Cell<T>) END);
+    }
+
+    /*
+    The infinite sequence seed, next(seed), next(next(seed)), ... like Stream.iterate(), but
+    memoized.
+     */
+    public static <T> LazyList<T> iterate(final T seed, final UnaryOperator<T> next) {
+        Objects.requireNonNull(next, "next");
+        return new LazyList<>(Lazy.of(() -> new Cell<>(seed, iterateFrom(seed, next))));
+    }
+
+    private static <T> Lazy<Cell<T>> iterateFrom(final T previous, final UnaryOperator<T> next) {
+        return Lazy.of(() -> {
+            final T value = next.apply(previous);
+            return new Cell<>(value, iterateFrom(value, next));
+        });
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private Lazy<Cell<T>> cursor = first;
+
+            @Override
+            public boolean hasNext() {
+                return cursor.get() != END;
+            }
+
+            @Override
+            public T next() {
+                final Cell<T> cell = cursor.get();
+                if (cell == END) {
+                    throw new NoSuchElementException();
+                }
+                cursor = cell.tail;
+                return cell.head;
+            }
+        };
+    }
+
+    /*
+    A fresh Stream over the sequence; call it as many times as needed.
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(),
+                Spliterator.ORDERED | Spliterator.IMMUTABLE), false);
+    }
+
+    public T get(final int index) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("index: " + index);
+        }
+        Cell<T> cell = first.get();
+        for (int i = 0; i < index && cell != END; i++) {
+            cell = cell.tail.get();
+        }
+        if (cell == END) {
+            throw new IndexOutOfBoundsException("index: " + index);
+        }
+        return cell.head;
+    }
+
+    public List<T> take(final int count) {
+        final List<T> taken = new ArrayList<>(count);
+        final Iterator<T> iterator = iterator();
+        while (taken.size() < count && iterator.hasNext()) {
+            taken.add(iterator.next());
+        }
+        return taken;
+    }
+
+    /*
+    How many elements have been computed so far, without computing any more.
+     */
+    public int computedSize() {
+        int count = 0;
+        for (Lazy<Cell<T>> cursor = first; cursor.isInitialized() && cursor.get() != END; cursor = cursor.get().tail) {
+            count++;
+        }
+        return count;
+    }
+}
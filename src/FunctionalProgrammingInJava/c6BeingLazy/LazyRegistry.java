@@ -0,0 +1,248 @@
+package FunctionalProgrammingInJava.c6BeingLazy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/***
+ * Lazy Resources That Depend on Each Other
+ * Each holder in this chapter is independent. When resources need one another, say a
+ * connection pool needs the configuration and a cache needs the pool, a naive holder chain
+ * creates them one after the other, even when parts of the chain have nothing to do with
+ * each other.
+ * LazyRegistry knows the dependencies of every resource. When a resource is requested, it
+ * walks its dependencies depth first (which gives a topological order), and starts each one
+ * on the executor as soon as the resources it depends on are ready. Independent branches
+ * therefore initialize in parallel.
+ * It also records when every resource started and finished, so we can see which chain of
+ * resources is on the critical path of a cold start.
+ */
+public class LazyRegistry {
+
+    /*
+    What a factory gets to see: only the resources it declared as dependencies, all of which
+    are ready by the time the factory runs.
+     */
+    public interface Dependencies {
+        <T> T get(String name);
+    }
+
+    private final class Node {
+
+        private final String name;
+        private final List<String> dependsOn;
+        private final Function<Dependencies, ?> factory;
+
+        private volatile CompletableFuture<Object> future;
+        private volatile long startedAt;
+        private volatile long finishedAt;
+
+        private Node(final String name, final List<String> dependsOn, final Function<Dependencies, ?> factory) {
+            this.name = name;
+            this.dependsOn = dependsOn;
+            this.factory = factory;
+        }
+
+        /*
+        Runs on the executor, so it only sees the futures of its dependencies that start() handed
+        it, never the registry's map, which register() may be changing at the same time.
+         */
+        private Object create(final Map<String, CompletableFuture<Object>> dependencies) {
+            startedAt = System.nanoTime();
+            try {
+                return Objects.requireNonNull(factory.apply(new Dependencies() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public <T> T get(final String dependency) {
+                        final CompletableFuture<Object> future = dependencies.get(dependency);
+                        if (future == null) {
+                            throw new IllegalStateException(name + " did not declare a dependency on " + dependency);
+                        }
+                        return (T) future.join();
+                    }
+                }), () -> "factory of " + name + " returned null");
+            } finally {
+                finishedAt = System.nanoTime();
+            }
+        }
+
+        private long initNanos() {
+            return finishedAt == 0 ? 0 : finishedAt - startedAt;
+        }
+    }
+
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+    private final Executor executor;
+    private final long createdAt = System.nanoTime();
+
+    public LazyRegistry() {
+        this(LazyExecutors.defaultExecutor());
+    }
+
+    public LazyRegistry(final Executor executor) {
+        this.executor = Objects.requireNonNull(executor, "executor");
+    }
+
+    public synchronized <T> LazyRegistry register(final String name, final Function<Dependencies, T> factory,
+                                                  final String... dependsOn) {
+        if (nodes.containsKey(name)) {
+            throw new IllegalArgumentException("already registered: " + name);
+        }
+        nodes.put(name, new Node(name, Collections.unmodifiableList(Arrays.asList(dependsOn)),
+                Objects.requireNonNull(factory, "factory")));
+        return this;
+    }
+
+    /*
+    Returns the future of the named resource, starting it and everything it depends on if
+    needed.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> CompletableFuture<T> getAsync(final String name) {
+        validate(name, new HashSet<>(), new HashSet<>());
+        return (CompletableFuture<T>) start(name);
+    }
+
+    /*
+    Blocking convenience over getAsync(), unwrapping the failure of the factory.
+     */
+    public <T> T get(final String name) {
+        try {
+            return this.<T>getAsync(name).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /*
+    Starts every registered resource, independent branches in parallel.
+     */
+    public synchronized CompletableFuture<Void> initializeAll() {
+        final Set<String> visiting = new HashSet<>();
+        final Set<String> validated = new HashSet<>();
+        nodes.keySet().forEach(name -> validate(name, visiting, validated));
+        return CompletableFuture.allOf(nodes.keySet().stream()
+                .map(this::start)
+                .toArray(CompletableFuture[]::new));
+    }
+
+    /*
+    Checks the resources that aren't started yet, reachable from the named one, before any of
+    them is started: all of them must be registered, and there must be no cycle. "visiting"
+    holds the current path of the depth-first walk, "validated" the resources already checked.
+     */
+    private void validate(final String name, final Set<String> visiting, final Set<String> validated) {
+        final Node node = nodes.get(name);
+        if (node == null) {
+            throw new IllegalArgumentException("unknown resource: " + name);
+        }
+        if (node.future != null || validated.contains(name)) {
+            return;
+        }
+        if (!visiting.add(name)) {
+            throw new IllegalStateException("dependency cycle through " + name);
+        }
+        node.dependsOn.forEach(dependency -> validate(dependency, visiting, validated));
+        visiting.remove(name);
+        validated.add(name);
+    }
+
+    /*
+    Depth-first walk over the validated dependencies. A resource is started only after all of
+    its dependencies have futures, so the futures are created in topological order.
+     */
+    private CompletableFuture<Object> start(final String name) {
+        final Node node = nodes.get(name);
+        if (node.future != null) {
+            return node.future;
+        }
+        final Map<String, CompletableFuture<Object>> dependencies = new LinkedHashMap<>();
+        node.dependsOn.forEach(dependency -> dependencies.put(dependency, start(dependency)));
+
+        node.future = CompletableFuture.allOf(dependencies.values().toArray(new CompletableFuture<?>[0]))
+                .thenApplyAsync(ignored -> node.create(dependencies), executor);
+        return node.future;
+    }
+
+    public synchronized Map<String, Long> initTimesNanos() {
+        final Map<String, Long> times = new LinkedHashMap<>();
+        nodes.values().forEach(node -> times.put(node.name, node.initNanos()));
+        return times;
+    }
+
+    /*
+    The chain of resources that decided when the last resource became ready: start from the
+    resource that finished last and keep following the dependency that finished last.
+     */
+    public synchronized List<String> criticalPath() {
+        final List<String> path = new ArrayList<>();
+        Node current = nodes.values().stream()
+                .filter(node -> node.finishedAt != 0)
+                .max((a, b) -> Long.compare(a.finishedAt, b.finishedAt))
+                .orElse(null);
+        while (current != null) {
+            path.add(current.name);
+            current = current.dependsOn.stream()
+                    .map(nodes::get)
+                    .filter(node -> node.finishedAt != 0)
+                    .max((a, b) -> Long.compare(a.finishedAt, b.finishedAt))
+                    .orElse(null);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    public synchronized String report() {
+        final StringBuilder sb = new StringBuilder();
+        nodes.values().forEach(node -> sb.append(String.format("%-12s start %6.1f ms  init %6.1f ms  after %s%n",
+                node.name,
+                node.startedAt == 0 ? 0.0 : (node.startedAt - createdAt) / 1e6,
+                node.initNanos() / 1e6,
+                node.dependsOn)));
+        sb.append("critical path: ").append(criticalPath());
+        return sb.toString();
+    }
+
+    private static Heavy slowHeavy(final String name, final long millis) {
+        System.out.println("creating " + name + " on " + Thread.currentThread().getName());
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new Heavy();
+    }
+
+    public static void main(String[] args) {
+
+        /*
+        config and metrics have no dependencies, so they start together; pool waits for
+        config, and cache waits for both pool and metrics.
+         */
+        final LazyRegistry registry = new LazyRegistry()
+                .register("config", deps -> slowHeavy("config", 100))
+                .register("metrics", deps -> slowHeavy("metrics", 300))
+                .register("pool", deps -> slowHeavy("pool", 200), "config")
+                .register("cache", deps -> {
+                    deps.<Heavy>get("pool");
+                    deps.<Heavy>get("metrics");
+                    return slowHeavy("cache", 50);
+                }, "pool", "metrics");
+
+        System.out.println("cache: " + registry.<Heavy>get("cache"));
+        System.out.println(registry.report());
+    }
+}
@@ -0,0 +1,161 @@
+package FunctionalProgrammingInJava.c6BeingLazy;
+
+/***
+ * Primality for the Whole long Range
+ * P6Primes.isPrime() (and its twin in ModernJavaInAction's P3Partitioning) divides by every
+ * number up to the square root. That is O(sqrt n) per call and tied to int. For a random
+ * 64-bit number it would mean billions of divisions.
+ * MillerRabin answers in a few dozen modular multiplications:
+ * - Small numbers, and numbers with a small prime factor (most of them), are settled by a
+ *   handful of trial divisions.
+ * - Everything else goes through the Miller-Rabin test. The test is probabilistic in general,
+ *   but for numbers below 2^64 the seven witnesses below are known to never be fooled (three
+ *   are enough in the int range), so the answer is exact.
+ * - The modular multiplications use Montgomery form, which replaces the division of a 128-bit
+ *   product by n with multiplications and a shift.
+ */
+public final class MillerRabin {
+
+    private static final int[] SMALL_PRIMES = {2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47, 53};
+
+    /*
+    Every composite below 59 * 59 has a factor in SMALL_PRIMES.
+     */
+    private static final long TRIAL_DIVISION_LIMIT = 59 * 59;
+
+    /*
+    A deterministic set of witnesses for every n < 2^64 (Jim Sinclair's set).
+     */
+    private static final long[] WITNESSES = {2, 325, 9375, 28178, 450775, 9780504, 1795265022};
+
+    /*
+    Below 4,759,123,141, which covers every int, three witnesses are enough.
+     */
+    private static final long SMALL_WITNESSES_LIMIT = 4_759_123_141L;
+    private static final long[] SMALL_WITNESSES = {2, 7, 61};
+
+    private MillerRabin() {
+    }
+
+    public static boolean isPrime(final long n) {
+        if (n < 2) {
+            return false;
+        }
+        for (int p : SMALL_PRIMES) {
+            if (n % p == 0) {
+                return n == p;
+            }
+        }
+        if (n < TRIAL_DIVISION_LIMIT) {
+            return true;
+        }
+        return millerRabin(n);
+    }
+
+    /*
+    n - 1 = d * 2^s with d odd. A witness a proves n composite unless a^d = 1 or
+    a^(d * 2^r) = -1 (mod n) for some r < s.
+    All the values below are kept in Montgomery form, so "one" and "minus one" are R mod n
+    and n - (R mod n).
+     */
+    private static boolean millerRabin(final long n) {
+        final int s = Long.numberOfTrailingZeros(n - 1);
+        final long d = (n - 1) >>> s;
+
+        final long inverse = inverse(n);
+        final long one = Long.remainderUnsigned(-n, n);   // R mod n, with R = 2^64
+        final long minusOne = n - one;
+        final long rSquared = rSquared(one, n);
+
+        nextWitness:
+        for (long witness : n < SMALL_WITNESSES_LIMIT ? SMALL_WITNESSES : WITNESSES) {
+            final long a = witness % n;
+            if (a == 0) {
+                continue;
+            }
+            long x = power(multiply(a, rSquared, n, inverse), d, one, n, inverse);
+            if (x == one || x == minusOne) {
+                continue;
+            }
+            for (int r = 1; r < s; r++) {
+                x = multiply(x, x, n, inverse);
+                if (x == minusOne) {
+                    continue nextWitness;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /*
+    n^-1 mod 2^64 by Newton's iteration. n * n = 1 (mod 8) for odd n, so n is its own
+    inverse to 3 bits, and each step doubles the number of correct bits: 6, 12, 24, 48, 96.
+     */
+    private static long inverse(final long n) {
+        long x = n;
+        for (int i = 0; i < 5; i++) {
+            x *= 2 - n * x;
+        }
+        return x;
+    }
+
+    /*
+    R^2 mod n, by doubling R mod n another 64 times. Needed once per number to move
+    values into Montgomery form.
+     */
+    private static long rSquared(final long one, final long n) {
+        long r = one;
+        for (int i = 0; i < 64; i++) {
+            r = addMod(r, r, n);
+        }
+        return r;
+    }
+
+    private static long addMod(final long a, final long b, final long n) {
+        final long sum = a + b;
+        return Long.compareUnsigned(sum, a) < 0 || Long.compareUnsigned(sum, n) >= 0 ? sum - n : sum;
+    }
+
+    /*
+    Montgomery multiplication: a * b * R^-1 mod n, for a, b < n.
+    With t = a * b as hi:lo, m = lo * n^-1 makes m * n equal to lo in its low 64 bits, so
+    t - m * n is divisible by R and (t - m * n) / R = hi - high(m * n), which lies in (-n, n).
+     */
+    private static long multiply(final long a, final long b, final long n, final long inverse) {
+        final long lo = a * b;
+        final long hi = unsignedMultiplyHigh(a, b);
+        final long mnHi = unsignedMultiplyHigh(lo * inverse, n);
+        final long t = hi - mnHi;
+        return Long.compareUnsigned(hi, mnHi) < 0 ? t + n : t;
+    }
+
+    private static long power(long base, long exponent, final long one, final long n, final long inverse) {
+        long result = one;
+        while (exponent != 0) {
+            if ((exponent & 1) != 0) {
+                result = multiply(result, base, n, inverse);
+            }
+            base = multiply(base, base, n, inverse);
+            exponent >>>= 1;
+        }
+        return result;
+    }
+
+    /*
+    The high 64 bits of the unsigned 128-bit product, from the signed Math.multiplyHigh().
+     */
+    private static long unsignedMultiplyHigh(final long a, final long b) {
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+
+    public static void main(String[] args) {
+
+        System.out.println("17 is prime: " + isPrime(17));
+        System.out.println("561 (a Carmichael number) is prime: " + isPrime(561));
+        System.out.println("2^31 - 1 is prime: " + isPrime(Integer.MAX_VALUE));
+        System.out.println("2^61 - 1 is prime: " + isPrime((1L << 61) - 1));
+        System.out.println("2^63 - 25 is prime: " + isPrime(Long.MAX_VALUE - 24));
+        System.out.println("(2^31 - 1)^2 is prime: " + isPrime((long) Integer.MAX_VALUE * Integer.MAX_VALUE));
+    }
+}
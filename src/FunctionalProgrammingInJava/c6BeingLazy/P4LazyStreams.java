@@ -92,5 +92,19 @@ public class P4LazyStreams {
         operation was invoked. And even then, they only did the minimum work
         necessary to satisfy the terminal operation. 
          */
+
+        /*
+        The flip side: namesWith3Letters is spent now. Asking for the first name again means
+        building the pipeline again, and calling length() and toUpper() all over. A LazyList
+        keeps the laziness but remembers what it computed, so it can be consumed as often as
+        we like; only the first walk calls length() and toUpper().
+         */
+        final LazyList<String> memoizedNamesWith3Letters = LazyList.from(names.stream()
+                .filter(name -> length(name) == 3)
+                .map(name -> toUpper(name)));
+
+        System.out.println("LazyList created...");
+        System.out.println(memoizedNamesWith3Letters.stream().findFirst().get());
+        System.out.println("again: " + memoizedNamesWith3Letters.stream().findFirst().get());
     }
 }
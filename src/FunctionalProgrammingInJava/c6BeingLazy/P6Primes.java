@@ -59,6 +59,39 @@ public class P6Primes {
                 .collect(Collectors.<Integer>toList());
     }
 
+    /*
+    primes() tests every candidate on its own, so asking for many primes, or for primes
+    far out, quickly becomes slow. sievedPrimes() keeps the same contract but is backed by
+    SegmentedSieve, which crosses out composites a cache-sized window at a time. The
+    result is an IntStream: the primes are never boxed into Integers.
+     */
+    public static IntStream sievedPrimes(final int fromNumber, final int count) {
+        return SegmentedSieve.intPrimes(fromNumber, count);
+    }
+
+    /*
+    Both primes() and sievedPrimes() start over on every call. sharedPrimes() serves the
+    primes from PrimeTable, which keeps every prime found so far for the whole process and
+    only sieves the numbers beyond what it already knows.
+     */
+    public static IntStream sharedPrimes(final int fromNumber, final int count) {
+        return PrimeTable.shared().primes(fromNumber, count);
+    }
+
+    /*
+    The infinite series of primes() itself can be kept, too. PRIMES is the same
+    Stream.iterate() idea on a LazyList: each prime is found by primeAfter() the first time
+    any caller needs it, and remembered for every caller after that.
+     */
+    private static final LazyList<Integer> PRIMES = LazyList.iterate(2, P6Primes::primeAfter);
+
+    public static List<Integer> memoizedPrimes(final int fromNumber, final int count) {
+        return PRIMES.stream()
+                .dropWhile(prime -> prime < fromNumber)
+                .limit(count)
+                .collect(Collectors.<Integer>toList());
+    }
+
     public static void main(String[] args) {
 
         /*
@@ -70,5 +103,25 @@ public class P6Primes {
         Five primes starting at 100
          */
         System.out.println("5 primes from 100: " + primes(100, 5));
+
+        /*
+        Same answers from the sieve
+         */
+        System.out.println("5 primes from 100, sieved: " + sievedPrimes(100, 5)
+                .boxed()
+                .collect(Collectors.toList()));
+
+        /*
+        And from the shared table; a second call finds them already there.
+         */
+        System.out.println("5 primes from 100, shared: " + sharedPrimes(100, 5)
+                .boxed()
+                .collect(Collectors.toList()));
+
+        /*
+        And from the memoized series; the second call only walks what the first one found.
+         */
+        System.out.println("10 primes from 1, memoized: " + memoizedPrimes(1, 10));
+        System.out.println("5 primes from 7, memoized: " + memoizedPrimes(7, 5));
     }
 }
@@ -0,0 +1,36 @@
+package FunctionalProgrammingInJava.c6BeingLazy;
+
+/***
+ * Rebuilding the Holder on Lazy
+ * P1HolderNaive pays for synchronized on every call, and P2Holder still sends the first
+ * callers through a synchronized createAndCacheHeavy(). With the Lazy type, the holder
+ * shrinks to a field and a one line getter, and after the first call getHeavy() is a
+ * plain acquire read with no monitor involved.
+ */
+public class P7LazyHolder {
+
+    private final Lazy<Heavy> heavy = Lazy.of(Heavy::new);
+
+    public P7LazyHolder() {
+        System.out.println("Holder created");
+    }
+
+    public Heavy getHeavy() {
+        return heavy.get();
+    }
+
+    //...
+
+    public static void main(String[] args) {
+
+        final P7LazyHolder holder = new P7LazyHolder();
+        System.out.println("deferring heavy creation...");
+        System.out.println(holder.getHeavy());
+        System.out.println(holder.getHeavy());
+
+        /*
+        Same output as P2Holder: Heavy is created once, on the first call. The difference
+        shows up only under contention; see LazyHolderBenchmark for the numbers.
+         */
+    }
+}
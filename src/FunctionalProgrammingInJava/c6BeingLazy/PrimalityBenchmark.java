@@ -0,0 +1,52 @@
+package FunctionalProgrammingInJava.c6BeingLazy;
+
+import ModernJavaInAction.c6CollectingDataWithStreams.P3Partitioning;
+
+import java.util.SplittableRandom;
+import java.util.function.LongPredicate;
+
+/***
+ * A rough comparison of the stream based trial division in P6Primes and P3Partitioning with
+ * MillerRabin. There is no JMH in this project, so this is a plain main() that warms each
+ * check up before timing it on the same pseudo-random numbers.
+ * The stream based checks only take ints, so they are timed on large ints; MillerRabin is
+ * timed on those as well as on random 63-bit longs, where trial division isn't an option.
+ */
+public class PrimalityBenchmark {
+
+    private static final int COUNT = 200_000;
+
+    public static void main(String[] args) {
+
+        final SplittableRandom random = new SplittableRandom(42);
+        final long[] ints = new long[COUNT];
+        final long[] longs = new long[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            ints[i] = (random.nextInt(Integer.MAX_VALUE / 2) + Integer.MAX_VALUE / 2) | 1;
+            longs[i] = random.nextLong(Long.MAX_VALUE) | 1;
+        }
+
+        for (int round = 0; round < 2; round++) {
+            final boolean report = round == 1;
+            time(report, "P6Primes.isPrime, ints", ints, n -> P6Primes.isPrime((int) n));
+            time(report, "P3Partitioning.isPrime, ints", ints, n -> P3Partitioning.isPrime((int) n));
+            time(report, "MillerRabin.isPrime, ints", ints, MillerRabin::isPrime);
+            time(report, "MillerRabin.isPrime, longs", longs, MillerRabin::isPrime);
+        }
+    }
+
+    private static void time(final boolean report, final String name, final long[] numbers,
+                             final LongPredicate isPrime) {
+        final long start = System.nanoTime();
+        int primes = 0;
+        for (long n : numbers) {
+            if (isPrime.test(n)) {
+                primes++;
+            }
+        }
+        final long elapsed = System.nanoTime() - start;
+        if (report) {
+            System.out.printf("%-30s %10.1f ns/call (%d primes)%n", name, (double) elapsed / numbers.length, primes);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package FunctionalProgrammingInJava.c6BeingLazy;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/***
+ * Counting Primes Without Listing Them
+ * "How many primes are there below n?" With P6Primes, or even with the sieve, the answer means
+ * producing every one of those primes: 37 billion of them below 10^12.
+ * PrimeCounting computes pi(n), the number of primes <= n, with Lehmer's formula, which only
+ * needs the primes up to about n^(2/3):
+ *     pi(x) = phi(x, a) + (b + a - 2)(b - a + 1) / 2
+ *             - sum over a < i <= b of pi(x / p_i)
+ *             - sum over a < i <= c, i <= j <= pi(sqrt(x / p_i)) of (pi(x / (p_i p_j)) - (j - 1))
+ * with a = pi(x^(1/4)), b = pi(x^(1/2)), c = pi(x^(1/3)), p_i the i-th prime, and phi(x, a)
+ * the count of numbers <= x that aren't divisible by any of the first a primes (Legendre).
+ * The primes come from the shared PrimeTable, small values of pi() are looked up in it, and
+ * larger ones are computed recursively with the same formula.
+ * The two big sums, and the top level of phi(x, a), are made of independent terms, so they run
+ * as parallel streams.
+ */
+public final class PrimeCounting {
+
+    /*
+    phi(x, k) for the first WHEEL_PRIMES primes is periodic with period 2*3*5*7*11*13, so it's
+    a table lookup.
+     */
+    private static final int WHEEL_PRIMES = 6;
+    private static final int WHEEL = 2 * 3 * 5 * 7 * 11 * 13;
+    private static final int[] WHEEL_PHI = new int[WHEEL + 1];
+
+    static {
+        final int[] smallPrimes = {2, 3, 5, 7, 11, 13};
+        for (int n = 1; n <= WHEEL; n++) {
+            boolean coprime = true;
+            for (int p : smallPrimes) {
+                coprime &= n % p != 0;
+            }
+            WHEEL_PHI[n] = WHEEL_PHI[n - 1] + (coprime ? 1 : 0);
+        }
+    }
+
+    /*
+    primes holds p_1 = primes[1], p_2 = primes[2], ... (index 0 is unused, to follow the
+    notation of the formula), every prime up to tableLimit.
+     */
+    private final int[] primes;
+    private final int primeCount;
+    private final long tableLimit;
+
+    private PrimeCounting(final long x) {
+        final int limit = (int) Math.min(Integer.MAX_VALUE - 1,
+                Math.max(1_000_000L, (long) Math.pow(x, 2.0 / 3.0) + 1));
+        final int[] table = PrimeTable.shared().primesUpTo(limit);
+        this.primes = new int[table.length + 1];
+        System.arraycopy(table, 0, primes, 1, table.length);
+        this.primeCount = table.length;
+        this.tableLimit = limit;
+    }
+
+    /*
+    The number of primes less than or equal to x.
+     */
+    public static long pi(final long x) {
+        if (x < 2) {
+            return 0;
+        }
+        if (x > SegmentedSieve.MAX_NUMBER) {
+            throw new IllegalArgumentException("x is above " + SegmentedSieve.MAX_NUMBER + ": " + x);
+        }
+        return new PrimeCounting(x).count(x);
+    }
+
+    private long count(final long x) {
+        if (x <= tableLimit) {
+            return tablePi(x);
+        }
+        final int a = (int) count(root(x, 4));
+        final int b = (int) count(root(x, 2));
+        final int c = (int) count(root(x, 3));
+
+        final long leading = phiParallel(x, a) + (long) (b + a - 2) * (b - a + 1) / 2;
+
+        final long correction = IntStream.rangeClosed(a + 1, b).parallel()
+                .mapToLong(i -> {
+                    final long w = x / primes[i];
+                    long term = count(w);
+                    if (i <= c) {
+                        final int bi = (int) count(root(w, 2));
+                        for (int j = i; j <= bi; j++) {
+                            term += count(w / primes[j]) - (j - 1);
+                        }
+                    }
+                    return term;
+                })
+                .sum();
+        return leading - correction;
+    }
+
+    /*
+    Number of primes <= x, for x within the table.
+     */
+    private long tablePi(final long x) {
+        final int index = Arrays.binarySearch(primes, 1, primeCount + 1, (int) x);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /*
+    phi(x, a) = phi(x, k) - sum over k < i <= a of phi(x / p_i, i - 1): the terms of the sum
+    are independent, which gives us the parallel split at the top level.
+     */
+    private long phiParallel(final long x, final int a) {
+        if (a <= WHEEL_PRIMES) {
+            return phi(x, a);
+        }
+        return phi(x, WHEEL_PRIMES) - IntStream.rangeClosed(WHEEL_PRIMES + 1, a).parallel()
+                .mapToLong(i -> phi(x / primes[i], i - 1))
+                .sum();
+    }
+
+    /*
+    Legendre's phi, with the usual shortcuts:
+    - below p_(a+1), only 1 is left,
+    - below p_(a+1)^2, what's left is 1 and the primes above p_a, which the table counts,
+    - for the first few primes, the wheel table answers directly.
+     */
+    private long phi(final long x, final int a) {
+        if (a == 0 || x == 0) {
+            return x;
+        }
+        if (a <= primeCount - 1) {
+            final long next = primes[a + 1];
+            if (x < next) {
+                return 1;
+            }
+            if (x <= tableLimit && x < next * next) {
+                return tablePi(x) - a + 1;
+            }
+        }
+        if (a == WHEEL_PRIMES) {
+            return (x / WHEEL) * WHEEL_PHI[WHEEL] + WHEEL_PHI[(int) (x % WHEEL)];
+        }
+        if (a < WHEEL_PRIMES) {
+            return phi(x, a - 1) - phi(x / primes[a], a - 1);
+        }
+        long result = phi(x, WHEEL_PRIMES);
+        for (int i = WHEEL_PRIMES + 1; i <= a; i++) {
+            result -= phi(x / primes[i], i - 1);
+        }
+        return result;
+    }
+
+    /*
+    floor(x^(1/k)), corrected for the rounding of Math.pow.
+     */
+    private static long root(final long x, final int k) {
+        long r = (long) Math.pow(x, 1.0 / k);
+        while (r > 0 && power(r, k) > x) {
+            r--;
+        }
+        while (power(r + 1, k) <= x) {
+            r++;
+        }
+        return r;
+    }
+
+    private static long power(final long base, final int k) {
+        long result = 1;
+        for (int i = 0; i < k; i++) {
+            if (result > Long.MAX_VALUE / base) {
+                return Long.MAX_VALUE;
+            }
+            result *= base;
+        }
+        return result;
+    }
+
+    public static void main(String[] args) {
+
+        /*
+        Small n: check against counting the sieved primes one by one.
+         */
+        for (long n = 10; n <= 100_000_000L; n *= 10) {
+            final long sieved = PrimeSpliterator.primes(0, n + 1).parallel().count();
+            System.out.printf("pi(%d) = %d, sieve: %d%n", n, pi(n), sieved);
+        }
+
+        /*
+        Large n, where listing the primes is out of the question.
+         */
+        for (long n = 1_000_000_000L; n <= 1_000_000_000_000L; n *= 10) {
+            final long start = System.nanoTime();
+            final long count = pi(n);
+            System.out.printf("pi(%d) = %d in %d ms%n", n, count, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package FunctionalProgrammingInJava.c6BeingLazy;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/***
+ * Primes in Parallel
+ * The infinite series in P6Primes comes from Stream.iterate(): every prime is computed from
+ * the previous one, so there's nothing to split and parallel() can't help. A bounded range
+ * of numbers, on the other hand, splits nicely: the primes in [from, mid) don't depend on
+ * the primes in [mid, to), and SegmentedSieve can sieve each half on its own.
+ * PrimeSpliterator walks the primes in [from, to). When the stream framework asks it to
+ * split, it hands out the first half of its remaining range, cut at a segment boundary so
+ * both halves sieve whole segments, and keeps the second half. Counting, summing or
+ * partitioning primes over a large range then runs on all cores with a parallel stream.
+ */
+public class PrimeSpliterator implements Spliterator.OfLong {
+
+    /*
+    Below this many numbers a split costs more than it saves.
+     */
+    private static final long MIN_SPLIT_SPAN = 4 * SegmentedSieve.SEGMENT_SPAN;
+
+    private long low;
+    private final long high;
+
+    /*
+    Lazily created when this spliterator starts traversing with tryAdvance(); bulk
+    traversal via forEachRemaining() doesn't need to buffer anything.
+     */
+    private long[] bits;
+    private long[] buffer;
+    private int bufferSize;
+    private int position;
+
+    public PrimeSpliterator(final long from, final long to) {
+        if (from < 0 || to > SegmentedSieve.MAX_NUMBER) {
+            throw new IllegalArgumentException("range must be within [0, " + SegmentedSieve.MAX_NUMBER + "]: ["
+                    + from + ", " + to + ")");
+        }
+        this.low = from;
+        this.high = Math.max(from, to);
+    }
+
+    /*
+    The primes in [from, to) as a sequential stream; call parallel() on it to split the work.
+     */
+    public static LongStream primes(final long from, final long to) {
+        return StreamSupport.longStream(new PrimeSpliterator(from, to), false);
+    }
+
+    @Override
+    public OfLong trySplit() {
+        if (position < bufferSize || high - low < MIN_SPLIT_SPAN) {
+            return null;
+        }
+        final long span = (high - low) / 2;
+        final long mid = low + span - span % SegmentedSieve.SEGMENT_SPAN;
+        final PrimeSpliterator prefix = new PrimeSpliterator(low, mid);
+        low = mid;
+        return prefix;
+    }
+
+    @Override
+    public boolean tryAdvance(final LongConsumer action) {
+        while (position == bufferSize) {
+            if (low >= high) {
+                return false;
+            }
+            if (bits == null) {
+                bits = new long[SegmentedSieve.SEGMENT_BITS / 64];
+                buffer = new long[1024];
+            }
+            final long segmentHigh = Math.min(high, low + SegmentedSieve.SEGMENT_SPAN);
+            bufferSize = 0;
+            position = 0;
+            SegmentedSieve.sieveSegment(low, segmentHigh, bits, prime -> {
+                if (bufferSize == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, bufferSize * 2);
+                }
+                buffer[bufferSize++] = prime;
+            });
+            low = segmentHigh;
+        }
+        action.accept(buffer[position++]);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(final LongConsumer action) {
+        while (position < bufferSize) {
+            action.accept(buffer[position++]);
+        }
+        final long[] scratch = bits != null ? bits : new long[SegmentedSieve.SEGMENT_BITS / 64];
+        while (low < high) {
+            final long segmentHigh = Math.min(high, low + SegmentedSieve.SEGMENT_SPAN);
+            SegmentedSieve.sieveSegment(low, segmentHigh, scratch, action);
+            low = segmentHigh;
+        }
+    }
+
+    /*
+    An estimate from the prime number theorem, x / ln x, which is all the framework needs
+    to balance the splits.
+     */
+    @Override
+    public long estimateSize() {
+        final long remaining = high - low + (bufferSize - position);
+        return (long) (remaining / Math.log(Math.max(high, 3)));
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | DISTINCT | SORTED | NONNULL | IMMUTABLE;
+    }
+
+    /*
+    Primes come out in their natural order.
+     */
+    @Override
+    public Comparator<? super Long> getComparator() {
+        return null;
+    }
+
+    public static void main(String[] args) {
+
+        final long from = 1_000_000_000L;
+        final long to = 1_500_000_000L;
+
+        long start = System.nanoTime();
+        final long sequential = primes(from, to).count();
+        System.out.printf("sequential: %d primes in [%d, %d) in %d ms%n",
+                sequential, from, to, (System.nanoTime() - start) / 1_000_000);
+
+        start = System.nanoTime();
+        final long parallel = primes(from, to).parallel().count();
+        System.out.printf("parallel:   %d primes in [%d, %d) in %d ms on %d cores%n",
+                parallel, from, to, (System.nanoTime() - start) / 1_000_000,
+                Runtime.getRuntime().availableProcessors());
+
+        /*
+        Any reduction works the same way, for example splitting the primes by their last digit.
+         */
+        final long[] byLastDigit = primes(2, 10_000_000).parallel()
+                .collect(() -> new long[10], (counts, prime) -> counts[(int) (prime % 10)]++,
+                        (left, right) -> Arrays.setAll(left, i -> left[i] + right[i]));
+        System.out.println("primes below 10^7 by last digit: " + Arrays.toString(byLastDigit));
+    }
+}
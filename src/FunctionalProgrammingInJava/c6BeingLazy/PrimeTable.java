@@ -0,0 +1,299 @@
+package FunctionalProgrammingInJava.c6BeingLazy;
+
+import ModernJavaInAction.c6CollectingDataWithStreams.PrimeNumbersCollector;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+/***
+ * Remembering the Primes We Already Found
+ * P6Primes.primes() and P3Partitioning.partitionPrimes() start from scratch on every call. The
+ * primes don't change, though, so PrimeTable keeps them: one table per process, holding every
+ * prime up to its current limit, and growing (never shrinking) whenever a caller needs primes
+ * beyond that limit.
+ * Reads are lock-free. The primes live in an immutable snapshot published through a volatile
+ * field; a reader picks up the current snapshot and works with it, while a writer that needs a
+ * bigger table sieves the missing range with SegmentedSieve, under a lock, and publishes a new
+ * snapshot when it's done.
+ * The table can also be attached to a file. It then starts from the primes saved there, and
+ * every growth is written back through a memory-mapped buffer, so a restarted process starts
+ * with a warm table. Writing back is best-effort: if it fails, the table keeps the primes it
+ * has, detaches from the file, and records the failure in saveFailure().
+ * The table stops growing at a maximum limit, 2^26 unless configured otherwise, which keeps
+ * it to some 3.9 million primes (16 MB). Above that limit isPrime() asks MillerRabin, and
+ * primesUpTo() and primes() sieve the rest with SegmentedSieve without keeping it, so no read
+ * can make the table hold every prime up to Integer.MAX_VALUE. The shared table takes its
+ * maximum from the primeTable.maxLimit system property.
+ */
+public final class PrimeTable {
+
+    public static final int DEFAULT_MAX_LIMIT = 1 << 26;
+
+    private static final PrimeTable SHARED =
+            new PrimeTable(Integer.getInteger("primeTable.maxLimit", DEFAULT_MAX_LIMIT));
+
+    private static final int MAGIC = 0x5052494D; // "PRIM"
+    private static final int HEADER_BYTES = 16;
+
+    /*
+    Every prime up to and including limit, in increasing order.
+     */
+    private static final class Snapshot {
+
+        private final int[] primes;
+        private final int limit;
+
+        private Snapshot(final int[] primes, final int limit) {
+            this.primes = primes;
+            this.limit = limit;
+        }
+    }
+
+    private final int maxLimit;
+    private volatile Snapshot snapshot = new Snapshot(new int[]{2, 3, 5, 7}, 10);
+    private Path file;
+    private volatile IOException saveFailure;
+
+    PrimeTable() {
+        this(DEFAULT_MAX_LIMIT);
+    }
+
+    public PrimeTable(final int maxLimit) {
+        if (maxLimit < 10) {
+            throw new IllegalArgumentException("maxLimit must be at least 10: " + maxLimit);
+        }
+        this.maxLimit = maxLimit;
+    }
+
+    public static PrimeTable shared() {
+        return SHARED;
+    }
+
+    public int limit() {
+        return snapshot.limit;
+    }
+
+    public int size() {
+        return snapshot.primes.length;
+    }
+
+    public int maxLimit() {
+        return maxLimit;
+    }
+
+    /*
+    Why the table stopped writing to its file, if it did.
+     */
+    public Optional<IOException> saveFailure() {
+        return Optional.ofNullable(saveFailure);
+    }
+
+    /*
+    Every prime up to and including limit, growing the table if needed. Beyond maxLimit the
+    table is grown to maxLimit and the rest is sieved for this call only.
+     */
+    public int[] primesUpTo(final int limit) {
+        if (limit <= maxLimit) {
+            final Snapshot current = ensureLimit(limit);
+            return Arrays.copyOf(current.primes, upperBound(current.primes, limit));
+        }
+        final Snapshot current = ensureLimit(maxLimit);
+        return sieve(current.primes, current.limit + 1L, limit);
+    }
+
+    public boolean isPrime(final int number) {
+        if (number > maxLimit) {
+            return MillerRabin.isPrime(number);
+        }
+        final Snapshot current = ensureLimit(number);
+        return number >= 2 && Arrays.binarySearch(current.primes, number) >= 0;
+    }
+
+    /*
+    The contract of P6Primes.primes(fromNumber, count), served from the table as far as it
+    goes; the primes past maxLimit come lazily from SegmentedSieve.
+     */
+    public IntStream primes(final int fromNumber, final int count) {
+        Snapshot current = snapshot;
+        int first = lowerBound(current.primes, fromNumber);
+        while (current.primes.length - first < count && current.limit < maxLimit && fromNumber <= maxLimit) {
+            // by the prime number theorem, count primes after x span about count * ln x numbers
+            final long needed = (long) Math.max(fromNumber, current.limit)
+                    + (long) ((count + 16L) * Math.log(Math.max(fromNumber, current.limit) + 3.0) * 1.2);
+            current = ensureLimit((int) Math.min(maxLimit, needed));
+            first = lowerBound(current.primes, fromNumber);
+        }
+        final int end = (int) Math.min(current.primes.length, (long) first + count);
+        final IntStream kept = Arrays.stream(current.primes, first, end);
+        if (end - first == count || current.limit == Integer.MAX_VALUE) {
+            return kept;
+        }
+        return IntStream.concat(kept, SegmentedSieve.intPrimes(
+                (int) Math.max(fromNumber, current.limit + 1L), count - (end - first)));
+    }
+
+    /*
+    P3Partitioning.partitionPrimes(n) through PrimeNumbersCollector, which then takes its
+    sieving primes from this table instead of finding them again on every call.
+     */
+    public PrimeNumbersCollector.IntPartition partitionPrimes(final int n) {
+        return PrimeNumbersCollector.partitionPrimes(n, this::primesUpTo);
+    }
+
+    private Snapshot ensureLimit(final int limit) {
+        final Snapshot current = snapshot;
+        return limit <= current.limit ? current : grow(limit);
+    }
+
+    /*
+    Sieves (limit, newLimit] segment by segment and publishes the extended table. The limit
+    at least doubles, so a run of slightly growing requests costs O(log n) extensions.
+     */
+    private synchronized Snapshot grow(final int limit) {
+        final Snapshot current = snapshot;
+        if (limit <= current.limit) {
+            return current;
+        }
+        final int newLimit = (int) Math.min(maxLimit, Math.max(limit, 2L * current.limit));
+        final Snapshot grown = new Snapshot(sieve(current.primes, current.limit + 1L, newLimit), newLimit);
+        snapshot = grown;
+        if (file != null) {
+            try {
+                save(grown, file);
+            } catch (IOException e) {
+                saveFailure = e;
+                file = null;
+            }
+        }
+        return grown;
+    }
+
+    /*
+    Loads the primes saved in the file, if any and if they go further than what we have,
+    and from now on saves every growth of the table to it.
+     */
+    public synchronized PrimeTable attach(final Path path) {
+        if (Files.exists(path)) {
+            final Snapshot saved = load(path);
+            if (saved.limit > maxLimit) {
+                snapshot = new Snapshot(Arrays.copyOf(saved.primes, upperBound(saved.primes, maxLimit)), maxLimit);
+            } else if (saved.limit > snapshot.limit) {
+                snapshot = saved;
+            }
+        }
+        try {
+            save(snapshot, path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        file = path;
+        saveFailure = null;
+        return this;
+    }
+
+    /*
+    The given primes followed by every prime in [low, high].
+     */
+    private static int[] sieve(final int[] known, final long low, final int high) {
+        final long[] bits = new long[SegmentedSieve.SEGMENT_BITS / 64];
+        final int[][] primes = {Arrays.copyOf(known,
+                (int) Math.min(Integer.MAX_VALUE - 8, 16 + 1.3 * high / Math.log(high)))};
+        final int[] size = {known.length};
+        for (long from = low; from <= high; from += SegmentedSieve.SEGMENT_SPAN) {
+            SegmentedSieve.sieveSegment(from, Math.min(high + 1L, from + SegmentedSieve.SEGMENT_SPAN), bits,
+                    prime -> {
+                        if (size[0] == primes[0].length) {
+                            primes[0] = Arrays.copyOf(primes[0], size[0] + (size[0] >> 1));
+                        }
+                        primes[0][size[0]++] = (int) prime;
+                    });
+        }
+        return Arrays.copyOf(primes[0], size[0]);
+    }
+
+    private static Snapshot load(final Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (channel.size() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+                throw new IllegalStateException("not a prime table: " + path);
+            }
+            final int count = buffer.getInt(4);
+            final long limit = buffer.getLong(8);
+            if (count < 0 || HEADER_BYTES + 4L * count != channel.size()) {
+                throw new IllegalStateException("prime table holds " + (channel.size() - HEADER_BYTES)
+                        + " bytes of primes, not " + count + " primes: " + path);
+            }
+            if (limit < 2 || limit > Integer.MAX_VALUE) {
+                throw new IllegalStateException("prime table limit out of range: " + limit + ": " + path);
+            }
+            final int[] primes = new int[count];
+            buffer.position(HEADER_BYTES);
+            buffer.asIntBuffer().get(primes);
+            return new Snapshot(primes, (int) limit);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+    Written to a temporary file first and then moved into place, so a crash halfway through
+    never leaves a truncated table behind.
+     */
+    private static void save(final Snapshot table, final Path path) throws IOException {
+        final Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        final long bytes = HEADER_BYTES + 4L * table.primes.length;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            buffer.putInt(MAGIC).putInt(table.primes.length).putLong(table.limit);
+            buffer.asIntBuffer().put(table.primes);
+            buffer.force();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /*
+    Index of the first prime >= number.
+     */
+    private static int lowerBound(final int[] primes, final int number) {
+        final int index = Arrays.binarySearch(primes, number);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /*
+    Number of primes <= number.
+     */
+    private static int upperBound(final int[] primes, final int number) {
+        final int index = Arrays.binarySearch(primes, number);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        final PrimeTable table = shared();
+        System.out.println("10 primes from 1: " + Arrays.toString(table.primes(1, 10).toArray()));
+        System.out.println("5 primes from 100: " + Arrays.toString(table.primes(100, 5).toArray()));
+        System.out.println("partitioned up to 10: " + table.partitionPrimes(10));
+        System.out.printf("table holds %d primes up to %d%n", table.size(), table.limit());
+
+        /*
+        A second table attached to a file starts where the first one left off.
+         */
+        final Path path = Files.createTempFile("primes", ".bin");
+        Files.delete(path);
+        final PrimeTable persisted = new PrimeTable().attach(path);
+        persisted.primesUpTo(10_000_000);
+        final PrimeTable restarted = new PrimeTable().attach(path);
+        System.out.printf("restarted table holds %d primes up to %d%n", restarted.size(), restarted.limit());
+        Files.delete(path);
+    }
+}
@@ -0,0 +1,287 @@
+package FunctionalProgrammingInJava.c6BeingLazy;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+/***
+ * Profiling the Stages of a Stream
+ * P4LazyStreams proves the laziness of a pipeline by printing from inside length() and
+ * toUpper(). ProfiledStream turns that trick into instrumentation we can leave in production
+ * code: every intermediate stage added through it is wrapped so that it counts
+ *  - how many times its function was invoked,
+ *  - how many elements came in and went out,
+ *  - how many nanoseconds were spent in its function (the stage's own time; downstream stages
+ *    run after the function has returned, so they're not included).
+ * When the terminal operation completes, the numbers of every stage are handed to a
+ * MetricsSink: a JFR sink that emits one event per stage comes with the class, and anything
+ * else (a metrics registry, a log) is a lambda away. Nothing is printed to stdout.
+ * The counters are LongAdders, so the numbers stay right for parallel streams.
+ */
+public final class ProfiledStream<T> {
+
+    /*
+    Where the numbers go once the terminal operation is done.
+     */
+    @FunctionalInterface
+    public interface MetricsSink {
+        void record(String pipeline, StageStats stats);
+    }
+
+    public static final class StageStats {
+
+        private final String stage;
+        private final long invocations;
+        private final long elementsIn;
+        private final long elementsOut;
+        private final long nanos;
+
+        private StageStats(final Stage stage) {
+            this.stage = stage.name;
+            this.invocations = stage.invocations.sum();
+            this.elementsIn = stage.elementsIn.sum();
+            this.elementsOut = stage.elementsOut.sum();
+            this.nanos = stage.nanos.sum();
+        }
+
+        public String getStage() {
+            return stage;
+        }
+
+        public long getInvocations() {
+            return invocations;
+        }
+
+        public long getElementsIn() {
+            return elementsIn;
+        }
+
+        public long getElementsOut() {
+            return elementsOut;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: invocations=%d, in=%d, out=%d, time=%.3f ms",
+                    stage, invocations, elementsIn, elementsOut, nanos / 1e6);
+        }
+    }
+
+    /*
+    One JFR event per stage and terminal operation, visible in JDK Mission Control under
+    "Functional Programming".
+     */
+    @Name("fp.StreamStage")
+    @Label("Stream Stage")
+    @Category("Functional Programming")
+    static final class StageEvent extends Event {
+
+        @Label("Pipeline")
+        String pipeline;
+
+        @Label("Stage")
+        String stage;
+
+        @Label("Invocations")
+        long invocations;
+
+        @Label("Elements In")
+        long elementsIn;
+
+        @Label("Elements Out")
+        long elementsOut;
+
+        @Label("Stage Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+    }
+
+    public static MetricsSink jfrSink() {
+        return (pipeline, stats) -> {
+            final StageEvent event = new StageEvent();
+            if (event.isEnabled()) {
+                event.pipeline = pipeline;
+                event.stage = stats.stage;
+                event.invocations = stats.invocations;
+                event.elementsIn = stats.elementsIn;
+                event.elementsOut = stats.elementsOut;
+                event.nanos = stats.nanos;
+                event.commit();
+            }
+        };
+    }
+
+    private static final class Stage {
+
+        private final String name;
+        private final LongAdder invocations = new LongAdder();
+        private final LongAdder elementsIn = new LongAdder();
+        private final LongAdder elementsOut = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        private Stage(final String name) {
+            this.name = name;
+        }
+    }
+
+    private final String pipeline;
+    private final Stream<T> stream;
+    private final List<Stage> stages;
+    private final MetricsSink sink;
+
+    private ProfiledStream(final String pipeline, final Stream<T> stream, final List<Stage> stages,
+                           final MetricsSink sink) {
+        this.pipeline = pipeline;
+        this.stream = stream;
+        this.stages = stages;
+        this.sink = sink;
+    }
+
+    /*
+    Starts profiling a pipeline. The "source" stage counts the elements the source produced,
+    which is often the most telling number for a lazy pipeline.
+    It counts them in a filter() that keeps everything rather than in a peek(): a filter makes
+    the size of the stream unknown, and without a known size, count() can't skip the stages
+    and report zeros for them, as it does since Java 9 on a sized pipeline.
+     */
+    public static <T> ProfiledStream<T> of(final String pipeline, final Stream<T> source, final MetricsSink sink) {
+        final Stage stage = new Stage("source");
+        final List<Stage> stages = new ArrayList<>();
+        stages.add(stage);
+        return new ProfiledStream<>(Objects.requireNonNull(pipeline), source.filter(element -> {
+            stage.elementsIn.increment();
+            stage.elementsOut.increment();
+            return true;
+        }), stages, Objects.requireNonNull(sink));
+    }
+
+    private <R> ProfiledStream<R> next(final Stage stage, final Stream<R> stream) {
+        final List<Stage> extended = new ArrayList<>(stages);
+        extended.add(stage);
+        return new ProfiledStream<>(pipeline, stream, extended, sink);
+    }
+
+    public ProfiledStream<T> filter(final String name, final Predicate<? super T> predicate) {
+        final Stage stage = new Stage(name);
+        return next(stage, stream.filter(element -> {
+            stage.elementsIn.increment();
+            stage.invocations.increment();
+            final long start = System.nanoTime();
+            final boolean keep = predicate.test(element);
+            stage.nanos.add(System.nanoTime() - start);
+            if (keep) {
+                stage.elementsOut.increment();
+            }
+            return keep;
+        }));
+    }
+
+    public <R> ProfiledStream<R> map(final String name, final Function<? super T, ? extends R> mapper) {
+        final Stage stage = new Stage(name);
+        return next(stage, stream.map(element -> {
+            stage.elementsIn.increment();
+            stage.invocations.increment();
+            final long start = System.nanoTime();
+            final R result = mapper.apply(element);
+            stage.nanos.add(System.nanoTime() - start);
+            stage.elementsOut.increment();
+            return result;
+        }));
+    }
+
+    /*
+    The time counted is the time to build the inner stream; its elements are counted as they
+    come out of the stage.
+     */
+    public <R> ProfiledStream<R> flatMap(final String name,
+                                         final Function<? super T, ? extends Stream<? extends R>> mapper) {
+        final Stage stage = new Stage(name);
+        return next(stage, stream.flatMap(element -> {
+            stage.elementsIn.increment();
+            stage.invocations.increment();
+            final long start = System.nanoTime();
+            final Stream<? extends R> inner = mapper.apply(element);
+            stage.nanos.add(System.nanoTime() - start);
+            return inner == null ? null : inner.peek(result -> stage.elementsOut.increment());
+        }));
+    }
+
+    /*
+    Any terminal operation: runs it on the underlying stream and reports every stage once it
+    returns, or once it fails.
+     */
+    public <R> R terminal(final Function<? super Stream<T>, ? extends R> operation) {
+        try {
+            return operation.apply(stream);
+        } finally {
+            report();
+        }
+    }
+
+    public Optional<T> findFirst() {
+        return terminal(Stream::findFirst);
+    }
+
+    public long count() {
+        return terminal(Stream::count);
+    }
+
+    public <R, A> R collect(final Collector<? super T, A, R> collector) {
+        return terminal(stream -> stream.collect(collector));
+    }
+
+    public ProfiledStream<T> parallel() {
+        return new ProfiledStream<>(pipeline, stream.parallel(), stages, sink);
+    }
+
+    private void report() {
+        stages.forEach(stage -> sink.record(pipeline, new StageStats(stage)));
+    }
+
+    public static void main(String[] args) {
+
+        final List<String> names = Arrays.asList("Brad", "Kate", "Kim", "Jack", "Joe",
+                "Mike", "Susan", "George", "Robert", "Julia", "Parker", "Benson");
+
+        /*
+        The pipeline of P4LazyStreams, profiled. The sink here collects the numbers so we
+        can look at them; in production, jfrSink() or a metrics registry would take them.
+         */
+        final List<String> report = new ArrayList<>();
+        final MetricsSink collecting = (pipeline, stats) -> report.add(pipeline + " " + stats);
+
+        final String firstNameWith3Letters = ProfiledStream.of("firstNameWith3Letters", names.stream(), collecting)
+                .filter("length == 3", name -> name.length() == 3)
+                .map("toUpper", String::toUpperCase)
+                .findFirst()
+                .get();
+
+        System.out.println(firstNameWith3Letters);
+        report.forEach(System.out::println);
+
+        /*
+        Run with -XX:StartFlightRecording to see the same numbers as fp.StreamStage events.
+         */
+        ProfiledStream.of("allNamesWith3Letters", names.stream(), jfrSink())
+                .filter("length == 3", name -> name.length() == 3)
+                .map("toUpper", String::toUpperCase)
+                .count();
+    }
+}
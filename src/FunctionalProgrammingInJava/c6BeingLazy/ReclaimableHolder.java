@@ -0,0 +1,136 @@
+package FunctionalProgrammingInJava.c6BeingLazy;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/***
+ * A Holder the Garbage Collector May Empty
+ * Once P2Holder has created its Heavy, the instance stays reachable for as long as the holder
+ * does, even if nobody has asked for it in hours. ReclaimableHolder only keeps a soft or weak
+ * reference to the instance, so the garbage collector is free to reclaim it when memory is
+ * needed (SOFT) or as soon as no caller holds on to it anymore (WEAK). The next call to get()
+ * notices the cleared reference and transparently creates a new instance.
+ * The counters tell how often that happened, which is what we need to tune the heap size: a
+ * high rebuild count means the heap is too small for the working set.
+ */
+public class ReclaimableHolder<T> implements Supplier<T> {
+
+    public enum Strength { SOFT, WEAK }
+
+    private final Supplier<? extends T> factory;
+    private final Strength strength;
+
+    private volatile Reference<T> reference;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder creations = new LongAdder();
+    private final LongAdder reclaims = new LongAdder();
+
+    public ReclaimableHolder(final Supplier<? extends T> factory, final Strength strength) {
+        this.factory = Objects.requireNonNull(factory, "factory");
+        this.strength = Objects.requireNonNull(strength, "strength");
+    }
+
+    public ReclaimableHolder(final Supplier<? extends T> factory) {
+        this(factory, Strength.SOFT);
+    }
+
+    /*
+    Fast path: the reference is there and still holds the instance. The strong local variable
+    keeps the instance alive for the caller even if the collector clears the reference right
+    after the read.
+     */
+    @Override
+    public T get() {
+        final Reference<T> current = reference;
+        final T instance = current == null ? null : current.get();
+        if (instance != null) {
+            hits.increment();
+            return instance;
+        }
+        return createAndCache();
+    }
+
+    private synchronized T createAndCache() {
+        final Reference<T> current = reference;
+        T instance = current == null ? null : current.get();
+        if (instance != null) {
+            hits.increment();
+            return instance;
+        }
+        if (current != null) {
+            reclaims.increment();
+        }
+        instance = Objects.requireNonNull(factory.get(), "factory returned null");
+        creations.increment();
+        reference = strength == Strength.SOFT ? new SoftReference<>(instance) : new WeakReference<>(instance);
+        return instance;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long creations() {
+        return creations.sum();
+    }
+
+    /*
+    Instances found cleared by the collector. Every one of them caused a rebuild.
+     */
+    public long reclaims() {
+        return reclaims.sum();
+    }
+
+    public long rebuilds() {
+        return Math.max(0, creations.sum() - 1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ReclaimableHolder[%s, hits=%d, creations=%d, reclaims=%d, rebuilds=%d]",
+                strength, hits(), creations(), reclaims(), rebuilds());
+    }
+
+    public static void main(String[] args) {
+
+        final ReclaimableHolder<Heavy> holder = new ReclaimableHolder<>(Heavy::new, Strength.WEAK);
+        System.out.println("deferring heavy creation...");
+        System.out.println(holder.get());
+        System.out.println(holder.get());
+
+        /*
+        Nobody keeps the Heavy instance, so with a weak reference a collection is enough to
+        reclaim it. The next get() builds a new one.
+         */
+        System.gc();
+        System.out.println(holder.get());
+        System.out.println(holder);
+
+        /*
+        A soft reference survives regular collections; how long depends on how much heap is
+        free, and it's only guaranteed to be cleared before an OutOfMemoryError, which we don't
+        want to provoke. So the pressure is bounded: at most three quarters of the maximum heap,
+        and never more than 256 MB, a megabyte at a time, stopping as soon as the reference is
+        cleared. Run with -XX:SoftRefLRUPolicyMSPerMB=0, which lets the collector clear soft
+        references that aren't in use at any collection, to see the Heavy go and be rebuilt;
+        without it, it usually survives.
+         */
+        final ReclaimableHolder<Heavy> softHolder = new ReclaimableHolder<>(Heavy::new);
+        softHolder.get();
+        final long budget = Math.min(Runtime.getRuntime().maxMemory() / 4 * 3, 256L << 20);
+        final List<long[]> pressure = new ArrayList<>();
+        for (long allocated = 0; allocated < budget && softHolder.reference.get() != null; allocated += 1 << 20) {
+            pressure.add(new long[1 << 17]);
+        }
+        pressure.clear();
+        softHolder.get();
+        System.out.println(softHolder);
+    }
+}
@@ -0,0 +1,135 @@
+package FunctionalProgrammingInJava.c6BeingLazy;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/***
+ * A Holder That Goes Stale
+ * P2Holder swaps its Supplier once, from "create and cache" to "return the cached instance",
+ * and keeps that instance forever. RefreshingHolder keeps swapping: every cached instance
+ * comes with an expiry time, and once it has expired the next caller kicks off a rebuild on
+ * a background Executor and swaps in a fresh Supplier when the rebuild is done.
+ * While the rebuild runs, readers keep getting the old instance without blocking
+ * (stale-while-revalidate). Only the very first call, when there is nothing to serve yet,
+ * has to wait for the factory.
+ */
+public class RefreshingHolder<T> implements Supplier<T> {
+
+    private final Supplier<? extends T> factory;
+    private final long timeToLiveNanos;
+    private final Executor refresher;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private volatile Supplier<T> supplier = this::createAndCache;
+
+    public RefreshingHolder(final Supplier<? extends T> factory, final Duration timeToLive) {
+        this(factory, timeToLive, ForkJoinPool.commonPool());
+    }
+
+    public RefreshingHolder(final Supplier<? extends T> factory, final Duration timeToLive,
+                            final Executor refresher) {
+        if (timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("timeToLive must be positive: " + timeToLive);
+        }
+        this.factory = Objects.requireNonNull(factory, "factory");
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.refresher = Objects.requireNonNull(refresher, "refresher");
+    }
+
+    @Override
+    public T get() {
+        return supplier.get();
+    }
+
+    /*
+    The cached form of the Supplier, the equivalent of HeavyFactory in P2Holder. Besides the
+    instance it remembers when it goes stale, and it triggers the refresh itself, so the fast
+    path in get() stays a single volatile read plus a clock check.
+     */
+    private final class Cached implements Supplier<T> {
+
+        private final T instance;
+        private final long expiresAt;
+
+        private Cached(final T instance) {
+            this.instance = instance;
+            this.expiresAt = System.nanoTime() + timeToLiveNanos;
+        }
+
+        @Override
+        public T get() {
+            if (System.nanoTime() - expiresAt >= 0) {
+                refreshInBackground();
+            }
+            return instance;
+        }
+    }
+
+    private synchronized T createAndCache() {
+        if (!(supplier instanceof RefreshingHolder.Cached)) {
+            supplier = new Cached(factory.get());
+        }
+        return supplier.get();
+    }
+
+    /*
+    Only one refresh is in flight at a time. If the factory throws, the stale instance stays
+    in place for another time to live before a read tries again, so a failing factory isn't
+    called again on every read in between.
+     */
+    private void refreshInBackground() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refresher.execute(() -> {
+                try {
+                    supplier = new Cached(factory.get());
+                } catch (RuntimeException | Error failure) {
+                    final Supplier<T> stale = supplier;
+                    if (stale instanceof RefreshingHolder.Cached) {
+                        supplier = new Cached(((Cached) stale).instance);
+                    }
+                    throw failure;
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        } catch (RuntimeException rejected) {
+            refreshing.set(false);
+            throw rejected;
+        }
+    }
+
+    /*
+    Starts a refresh right away, regardless of the time left. Reads keep getting the current
+    instance until the new one is ready.
+     */
+    public void invalidate() {
+        final Supplier<T> current = supplier;
+        if (current instanceof RefreshingHolder.Cached) {
+            refreshInBackground();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        final RefreshingHolder<Heavy> holder = new RefreshingHolder<>(Heavy::new, Duration.ofMillis(100));
+        System.out.println("deferring heavy creation...");
+        System.out.println(holder.get());
+        System.out.println(holder.get());
+
+        /*
+        After the time to live has passed, the read still returns the old instance right away,
+        and a new Heavy is created in the background for the reads that follow.
+         */
+        Thread.sleep(150);
+        System.out.println("after expiry: " + holder.get());
+        Thread.sleep(50);
+        System.out.println("after refresh: " + holder.get());
+    }
+}
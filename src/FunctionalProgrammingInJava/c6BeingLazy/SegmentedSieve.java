@@ -0,0 +1,234 @@
+package FunctionalProgrammingInJava.c6BeingLazy;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/***
+ * A Prime Engine That Scales
+ * P6Primes.primes() finds every prime by trial division: primeAfter() tests one candidate
+ * after another, and isPrime() divides each of them by every number up to its square root.
+ * That's fine for ten primes, and hopeless for a million primes after 10^9.
+ * SegmentedSieve runs the Sieve of Eratosthenes one window ("segment") at a time. Each
+ * segment is a bitset of odd numbers small enough to stay in the CPU cache. To sieve it we
+ * only need the primes up to the square root of its upper end; they are found once with a
+ * plain sieve and reused for every segment.
+ * The results keep the laziness of P6Primes: primes(fromNumber, count) is an infinite
+ * LongStream cut by limit(), and a segment is only sieved when the stream needs its primes.
+ * The primes flow as primitive longs (or ints), so nothing is boxed.
+ * Numbers up to MAX_NUMBER are supported, which keeps the sieving primes within int.
+ */
+public final class SegmentedSieve {
+
+    /*
+    32 KB of bits per segment, one bit per odd number, so a segment spans 2^19 numbers.
+     */
+    static final int SEGMENT_BITS = 1 << 18;
+    static final long SEGMENT_SPAN = 2L * SEGMENT_BITS;
+
+    public static final long MAX_NUMBER = (long) Integer.MAX_VALUE * Integer.MAX_VALUE;
+
+    private static volatile int[] basePrimes = {2, 3, 5, 7};
+    private static volatile int basePrimesLimit = 10;
+
+    private SegmentedSieve() {
+    }
+
+    /*
+    The sieving primes: every prime up to and including limit, from a plain sieve. The array
+    only grows (doubling at least), so repeated and concurrent callers rarely pay for it.
+    The returned array may hold primes beyond the limit.
+     */
+    static int[] basePrimes(final int limit) {
+        if (limit <= basePrimesLimit) {
+            return basePrimes;
+        }
+        synchronized (SegmentedSieve.class) {
+            if (limit > basePrimesLimit) {
+                final int newLimit = (int) Math.min(Integer.MAX_VALUE - 1, Math.max(limit, 2L * basePrimesLimit));
+                basePrimes = simpleSieve(newLimit);
+                basePrimesLimit = newLimit;
+            }
+            return basePrimes;
+        }
+    }
+
+    private static int[] simpleSieve(final int limit) {
+        final boolean[] composite = new boolean[limit + 1];
+        int count = 0;
+        int[] primes = new int[Math.max(16, (int) (1.3 * limit / Math.log(Math.max(limit, 3))))];
+        for (int n = 2; n <= limit; n++) {
+            if (composite[n]) {
+                continue;
+            }
+            if (count == primes.length) {
+                primes = Arrays.copyOf(primes, count * 2);
+            }
+            primes[count++] = n;
+            for (long multiple = (long) n * n; multiple <= limit; multiple += n) {
+                composite[(int) multiple] = true;
+            }
+        }
+        return Arrays.copyOf(primes, count);
+    }
+
+    static int sqrtFloor(final long n) {
+        long root = (long) Math.sqrt((double) n);
+        while (root * root > n) {
+            root--;
+        }
+        while ((root + 1) * (root + 1) <= n) {
+            root++;
+        }
+        return (int) root;
+    }
+
+    /*
+    Sieves the numbers in [low, high), at most SEGMENT_SPAN of them, and hands the primes to
+    the action in increasing order. The bits array is scratch space owned by the caller, so
+    one buffer can be reused for every segment of a stream.
+    Bit i stands for the odd number start + 2i. For every odd sieving prime p, we start
+    crossing out at the first odd multiple of p that is in the segment and not below p * p;
+    smaller multiples have a smaller prime factor that already crossed them out.
+     */
+    static void sieveSegment(final long low, final long high, final long[] bits, final LongConsumer action) {
+        if (high <= low) {
+            return;
+        }
+        if (low <= 2 && 2 < high) {
+            action.accept(2);
+        }
+        final long start = Math.max(3, low | 1);
+        if (start >= high) {
+            return;
+        }
+        final int size = (int) ((high - start + 1) / 2);
+        Arrays.fill(bits, 0, (size + 63) >>> 6, 0L);
+
+        final int[] primes = basePrimes(sqrtFloor(high - 1));
+        for (int i = 1; i < primes.length; i++) {
+            final long p = primes[i];
+            final long square = p * p;
+            if (square >= high) {
+                break;
+            }
+            long multiple = square >= start ? square : ((start + p - 1) / p) * p;
+            if ((multiple & 1) == 0) {
+                multiple += p;
+            }
+            for (long index = (multiple - start) >>> 1; index < size; index += p) {
+                bits[(int) (index >>> 6)] |= 1L << index;
+            }
+        }
+
+        for (int word = 0; word < (size + 63) >>> 6; word++) {
+            long primesInWord = ~bits[word];
+            while (primesInWord != 0) {
+                final int index = (word << 6) + Long.numberOfTrailingZeros(primesInWord);
+                if (index >= size) {
+                    break;
+                }
+                action.accept(start + 2L * index);
+                primesInWord &= primesInWord - 1;
+            }
+        }
+    }
+
+    /*
+    Walks the primes from a starting number onwards, one segment at a time. The primes of the
+    current segment are buffered in a long[], so there's no boxing between the sieve and the
+    stream.
+     */
+    private static final class PrimeIterator implements PrimitiveIterator.OfLong {
+
+        private final long[] bits = new long[SEGMENT_BITS / 64];
+        private long[] buffer = new long[1024];
+        private int bufferSize;
+        private int position;
+        private long nextLow;
+
+        private PrimeIterator(final long fromNumber) {
+            this.nextLow = Math.max(0, fromNumber);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (position == bufferSize) {
+                if (nextLow >= MAX_NUMBER) {
+                    return false;
+                }
+                final long high = Math.min(MAX_NUMBER, nextLow + SEGMENT_SPAN);
+                bufferSize = 0;
+                position = 0;
+                sieveSegment(nextLow, high, bits, this::buffer);
+                nextLow = high;
+            }
+            return true;
+        }
+
+        private void buffer(final long prime) {
+            if (bufferSize == buffer.length) {
+                buffer = Arrays.copyOf(buffer, bufferSize * 2);
+            }
+            buffer[bufferSize++] = prime;
+        }
+
+        @Override
+        public long nextLong() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return buffer[position++];
+        }
+    }
+
+    /*
+    All primes greater than or equal to fromNumber, in increasing order. Like the series in
+    P6Primes, the stream is infinite for practical purposes; cut it with limit() or
+    takeWhile().
+     */
+    public static LongStream primesFrom(final long fromNumber) {
+        return StreamSupport.longStream(Spliterators.spliteratorUnknownSize(new PrimeIterator(fromNumber),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+    }
+
+    /*
+    The same contract as P6Primes.primes(fromNumber, count): count primes, starting with the
+    first prime greater than or equal to fromNumber.
+     */
+    public static LongStream primes(final long fromNumber, final int count) {
+        return primesFrom(fromNumber).limit(count);
+    }
+
+    /*
+    The int flavour of primes(), for callers that stay within the int range.
+     */
+    public static IntStream intPrimes(final int fromNumber, final int count) {
+        return primesFrom(fromNumber)
+                .takeWhile(prime -> prime <= Integer.MAX_VALUE)
+                .limit(count)
+                .mapToInt(prime -> (int) prime);
+    }
+
+    public static void main(String[] args) {
+
+        System.out.println("10 primes from 1: " + Arrays.toString(intPrimes(1, 10).toArray()));
+        System.out.println("5 primes from 100: " + Arrays.toString(intPrimes(100, 5).toArray()));
+
+        /*
+        The case that P6Primes can't handle: a million primes after 10^9.
+         */
+        final long start = System.nanoTime();
+        final long[] summary = primes(1_000_000_000L, 1_000_000)
+                .collect(() -> new long[2], (acc, prime) -> { acc[0]++; acc[1] = prime; },
+                        (left, right) -> { left[0] += right[0]; left[1] = right[1]; });
+        System.out.printf("%d primes from 10^9, the last one %d, in %d ms%n",
+                summary[0], summary[1], (System.nanoTime() - start) / 1_000_000);
+    }
+}
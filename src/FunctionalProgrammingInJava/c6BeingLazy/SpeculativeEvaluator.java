@@ -0,0 +1,115 @@
+package FunctionalProgrammingInJava.c6BeingLazy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/***
+ * Speculative Evaluation
+ * lazyEvaluator() in P3Evaluation and AdaptiveLazyEvaluator save time by not evaluating what
+ * isn't needed, but whatever they do evaluate, they evaluate one after the other. When the
+ * checks are independent and the result needs more than one of them, two multi-second
+ * evaluate() calls take the sum of their times.
+ * SpeculativeEvaluator starts all of the Suppliers at once on background threads (virtual
+ * threads where available, see LazyExecutors) and returns as soon as the result is decided:
+ * on the first false for AND, on the first true for OR, or once every Supplier has answered.
+ * The evaluations still running at that point are cancelled.
+ * We trade extra, possibly wasted work for latency, so this only pays off when the Suppliers
+ * are free of side effects and the machine has capacity to spare.
+ */
+public class SpeculativeEvaluator {
+
+    private SpeculativeEvaluator() {
+    }
+
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public static boolean and(final Supplier<Boolean>... inputs) {
+        return evaluate(AdaptiveLazyEvaluator.Mode.AND, LazyExecutors.defaultExecutor(), Arrays.asList(inputs));
+    }
+
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    public static boolean or(final Supplier<Boolean>... inputs) {
+        return evaluate(AdaptiveLazyEvaluator.Mode.OR, LazyExecutors.defaultExecutor(), Arrays.asList(inputs));
+    }
+
+    /*
+    Results are taken in completion order, not in submission order, which is what lets a fast
+    decisive answer win over a slow one. A Supplier that throws, or returns null instead of a
+    Boolean, only fails the evaluation if no other Supplier decides the result.
+     */
+    public static boolean evaluate(final AdaptiveLazyEvaluator.Mode mode, final ExecutorService executor,
+                                   final List<Supplier<Boolean>> inputs) {
+        final boolean decisiveValue = mode == AdaptiveLazyEvaluator.Mode.OR;
+        final CompletionService<Boolean> completion = new ExecutorCompletionService<>(executor);
+        final List<Future<Boolean>> futures = new ArrayList<>(inputs.size());
+        RuntimeException failure = null;
+        try {
+            inputs.forEach(input -> futures.add(completion.submit(
+                    () -> Objects.requireNonNull(input.get(), "Supplier<Boolean> returned null"))));
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    if (completion.take().get() == decisiveValue) {
+                        return decisiveValue;
+                    }
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof RuntimeException
+                                ? (RuntimeException) e.getCause()
+                                : new IllegalStateException(e.getCause());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while evaluating", e);
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return !decisiveValue;
+    }
+
+    /*
+    Same stand-in for a slow evaluate() as in AdaptiveLazyEvaluator. Sleeping makes the
+    evaluation respond to the cancellation by interruption.
+     */
+    private static boolean slowEvaluate(final int value, final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            System.out.println("cancelled evaluating ..." + value);
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return P3Evaluation.evaluate(value);
+    }
+
+    public static void main(String[] args) {
+
+        /*
+        Both checks are needed for a true result, so they run side by side and the answer
+        comes after roughly the slower of the two rather than after their sum.
+         */
+        long start = System.nanoTime();
+        System.out.println("accept?: " + and(() -> slowEvaluate(200, 500), () -> slowEvaluate(300, 500)));
+        System.out.printf("took %d ms%n", (System.nanoTime() - start) / 1_000_000);
+
+        /*
+        Here the fast check decides the AND on its own; the slow one is cancelled.
+         */
+        start = System.nanoTime();
+        System.out.println("accept?: " + and(() -> slowEvaluate(200, 2000), () -> slowEvaluate(2, 100)));
+        System.out.printf("took %d ms%n", (System.nanoTime() - start) / 1_000_000);
+    }
+}
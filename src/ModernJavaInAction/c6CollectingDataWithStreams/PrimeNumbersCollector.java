@@ -0,0 +1,275 @@
+package ModernJavaInAction.c6CollectingDataWithStreams;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/***
+ * Developing your own collector for better performance
+ * P3Partitioning.partitionPrimes() boxes every candidate into an Integer, collects them into
+ * List<Integer>s, and tests each of them from scratch by dividing it by every number up to its
+ * square root. A smarter test only divides by the primes found so far: if a candidate isn't
+ * divisible by any prime up to its square root, it's prime.
+ * PrimeNumbersCollector applies that idea to an IntStream, so nothing gets boxed:
+ * - the accumulator keeps primes and non-primes in growable int[] buffers,
+ * - the primes up to the square root of the largest candidate are found first, by the same
+ *   collector, run sequentially over that small range, where "the primes found so far" are
+ *   exactly the ones it needs; a caller that already keeps primes around can hand them in
+ *   instead,
+ * - the candidates are then tested against those primes only, which is independent of the
+ *   order in which they're visited, so the stream can be parallel and the combiner merely
+ *   appends the buffers of the right-hand part to the left-hand one.
+ * IntStream has no Collector, but its collect() takes the same supplier, accumulator and
+ * combiner functions; they're exposed here with the names of the Collector interface.
+ */
+public class PrimeNumbersCollector {
+
+    /*
+    The primes every candidate is tested against, or null to test each candidate against the
+    primes this accumulator has found so far (only valid sequentially, starting from 2).
+     */
+    private final int[] divisors;
+    private final int maxCandidate;
+
+    private PrimeNumbersCollector(final int[] divisors, final int maxCandidate) {
+        this.divisors = divisors;
+        this.maxCandidate = maxCandidate;
+    }
+
+    /*
+    A collector for candidates up to maxCandidate, in any order, sequential or parallel.
+     */
+    public static PrimeNumbersCollector upTo(final int maxCandidate) {
+        final int root = (int) Math.sqrt(maxCandidate);
+        final PrimeNumbersCollector sequential = new PrimeNumbersCollector(null, root);
+        final int[] divisors = IntStream.rangeClosed(2, root)
+                .collect(sequential.supplier(), sequential.accumulator(),
+                        (left, right) -> {
+                            throw new IllegalStateException("sieving primes are collected sequentially");
+                        })
+                .primes.toArray();
+        return new PrimeNumbersCollector(divisors, maxCandidate);
+    }
+
+    /*
+    The same, with the sieving primes taken from primesUpTo, which must return every prime up to
+    its argument in ascending order; for instance a table that outlives the collector, like
+    FunctionalProgrammingInJava's PrimeTable.shared()::primesUpTo.
+     */
+    public static PrimeNumbersCollector upTo(final int maxCandidate, final IntFunction<int[]> primesUpTo) {
+        return new PrimeNumbersCollector(primesUpTo.apply((int) Math.sqrt(maxCandidate)), maxCandidate);
+    }
+
+    /*
+    A growable int[], the primitive stand-in for the List<Integer> of partitioningBy().
+     */
+    static final class IntBuffer {
+
+        private int[] values = new int[16];
+        private int size;
+
+        void add(final int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(final IntBuffer other) {
+            if (size + other.size > values.length) {
+                values = Arrays.copyOf(values, Math.max(size + other.size, size * 2));
+            }
+            System.arraycopy(other.values, 0, values, size, other.size);
+            size += other.size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /*
+    The mutable result container: both halves of the partition.
+     */
+    public static final class Accumulator {
+        private final IntBuffer primes = new IntBuffer();
+        private final IntBuffer nonPrimes = new IntBuffer();
+    }
+
+    public Supplier<Accumulator> supplier() {
+        return Accumulator::new;
+    }
+
+    public ObjIntConsumer<Accumulator> accumulator() {
+        return (accumulator, candidate) -> {
+            if (candidate > maxCandidate) {
+                throw new IllegalArgumentException("candidate " + candidate + " is above " + maxCandidate);
+            }
+            if (isPrime(divisors != null ? divisors : accumulator.primes.values,
+                    divisors != null ? divisors.length : accumulator.primes.size, candidate)) {
+                accumulator.primes.add(candidate);
+            } else {
+                accumulator.nonPrimes.add(candidate);
+            }
+        };
+    }
+
+    /*
+    Only divides by the primes up to the square root of the candidate, and stops at the first
+    one that divides it.
+     */
+    private static boolean isPrime(final int[] primes, final int count, final int candidate) {
+        if (candidate < 2) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            final int prime = primes[i];
+            if ((long) prime * prime > candidate) {
+                break;
+            }
+            if (candidate % prime == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public BiConsumer<Accumulator, Accumulator> combiner() {
+        return (left, right) -> {
+            left.primes.addAll(right.primes);
+            left.nonPrimes.addAll(right.nonPrimes);
+        };
+    }
+
+    public static IntPartition finisher(final Accumulator accumulator) {
+        return new IntPartition(accumulator.primes.toArray(), accumulator.nonPrimes.toArray());
+    }
+
+    /*
+    The result: a Map<Boolean, int[]> like the Map<Boolean, List<Integer>> of partitioningBy(),
+    with true for the primes and false for the rest, backed by two int arrays.
+    get() and entrySet() hand out those arrays themselves, not copies, so lookups are free and
+    the map stays equal to itself; they must not be modified. primes() and nonPrimes() return
+    copies that can be.
+     */
+    public static final class IntPartition extends AbstractMap<Boolean, int[]> {
+
+        private final int[] primes;
+        private final int[] nonPrimes;
+
+        private IntPartition(final int[] primes, final int[] nonPrimes) {
+            this.primes = primes;
+            this.nonPrimes = nonPrimes;
+        }
+
+        public int[] primes() {
+            return primes.clone();
+        }
+
+        public int[] nonPrimes() {
+            return nonPrimes.clone();
+        }
+
+        public int primeCount() {
+            return primes.length;
+        }
+
+        public int nonPrimeCount() {
+            return nonPrimes.length;
+        }
+
+        @Override
+        public int[] get(final Object key) {
+            if (Boolean.TRUE.equals(key)) {
+                return primes;
+            }
+            return Boolean.FALSE.equals(key) ? nonPrimes : null;
+        }
+
+        @Override
+        public Set<Map.Entry<Boolean, int[]>> entrySet() {
+            return new AbstractSet<Map.Entry<Boolean, int[]>>() {
+                @Override
+                public Iterator<Map.Entry<Boolean, int[]>> iterator() {
+                    return new Iterator<Map.Entry<Boolean, int[]>>() {
+                        private int next;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < 2;
+                        }
+
+                        @Override
+                        public Map.Entry<Boolean, int[]> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            final boolean key = next++ != 0;
+                            return new SimpleImmutableEntry<>(key, get(key));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return 2;
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return "{false=" + Arrays.toString(nonPrimes) + ", true=" + Arrays.toString(primes) + "}";
+        }
+    }
+
+    /*
+    The drop-in for P3Partitioning.partitionPrimes(n), without boxing and in parallel.
+     */
+    public static IntPartition partitionPrimes(final int n) {
+        return partition(upTo(n), n);
+    }
+
+    /*
+    The same, with the sieving primes taken from primesUpTo, as in upTo(maxCandidate, primesUpTo).
+     */
+    public static IntPartition partitionPrimes(final int n, final IntFunction<int[]> primesUpTo) {
+        return partition(upTo(n, primesUpTo), n);
+    }
+
+    private static IntPartition partition(final PrimeNumbersCollector collector, final int n) {
+        return finisher(IntStream.rangeClosed(2, n).parallel()
+                .collect(collector.supplier(), collector.accumulator(), collector.combiner()));
+    }
+
+    public static void main(String[] args) {
+
+        System.out.println(partitionPrimes(10)); // {false=[4, 6, 8, 9, 10], true=[2, 3, 5, 7]}
+
+        /*
+        Let's compare with partitioningBy() over boxed Integers at n = 10^6.
+         */
+        final int n = 1_000_000;
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            final int boxed = P3Partitioning.partitionPrimes(n).get(true).size();
+            final long boxedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+            final int primitive = partitionPrimes(n).primeCount();
+            final long primitiveMillis = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.printf("partitioningBy: %d primes in %d ms, PrimeNumbersCollector: %d primes in %d ms%n",
+                    boxed, boxedMillis, primitive, primitiveMillis);
+        }
+    }
+}